@@ -0,0 +1,275 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.FOAF;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.VCARD4;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFWriter;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * Generates synthetic DCAT-AP catalogs, with a configurable number of datasets
+ * and a configurable rate of defects detected by the built-in rules.
+ * The serialization (N-Triples, Turtle, RDF/XML) is taken from the file name.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class CatalogGenerator {
+    private final static ValueFactory F = SimpleValueFactory.getInstance();
+    
+    private final static String EX = "http://example.org/";
+    private final static String DGOV = "http://data.gov.be#";
+    private final static String MDR = "http://publications.europa.eu/resource/authority/";
+    
+    private final static IRI DGOV_FREQ = F.createIRI(DGOV, "freq");
+    private final static IRI DGOV_THEME = F.createIRI(DGOV, "theme");
+    private final static IRI DGOV_LICENSE = F.createIRI(DGOV, "license");
+    private final static IRI DGOV_SPATIAL = F.createIRI(DGOV, "spatial");
+    
+    private final static int PUBLISHERS = 50;
+    private final static int DISTRIBUTIONS = 2;
+    
+    /**
+     * Kinds of defects, each one triggers at least one built-in rule
+     */
+    public enum Defect {
+        NO_TITLE, NO_DESCRIPTION, NO_LANGUAGE_TAG, LITERAL_PUBLISHER, 
+        LITERAL_THEME, NO_THEME_MAPPING, DUPLICATE_IDENTIFIER, DUPLICATE_TITLE, 
+        NO_DISTRIBUTION, NO_DOWNLOAD_URL, DUPLICATE_DOWNLOAD_URL, 
+        LITERAL_ACCESS_URL, NO_FORMAT, CIRCULAR
+    }
+    
+    private final RDFWriter w;
+    private final Random rnd;
+    private final double defectRate;
+    
+    /**
+     * Write a triple
+     * 
+     * @param s subject
+     * @param p predicate
+     * @param o object
+     */
+    private void add(Resource s, IRI p, Value o) {
+        w.handleStatement(F.createStatement(s, p, o));
+    }
+    
+    /**
+     * Write the catalog description and the shared resources
+     * 
+     * @param catalog catalog IRI
+     */
+    private void catalog(IRI catalog) {
+        add(catalog, RDF.TYPE, DCAT.CATALOG);
+        add(catalog, DCTERMS.TITLE, F.createLiteral("Synthetic catalog", "en"));
+        add(catalog, DCTERMS.DESCRIPTION, F.createLiteral("Generated for benchmarks", "en"));
+        add(catalog, DCTERMS.PUBLISHER, F.createIRI(EX, "publisher/0"));
+        add(catalog, FOAF.HOMEPAGE, F.createIRI(EX));
+        add(catalog, DCTERMS.LANGUAGE, F.createIRI(MDR, "language/ENG"));
+        add(catalog, DCTERMS.LICENSE, F.createIRI(EX, "license"));
+        add(catalog, DCTERMS.MODIFIED, F.createLiteral("2022-01-01"));
+        add(catalog, DCTERMS.SPATIAL, F.createIRI(EX, "spatial/be"));
+        
+        for (int i = 0; i < PUBLISHERS; i++) {
+            IRI pub = F.createIRI(EX, "publisher/" + i);
+            add(pub, RDF.TYPE, FOAF.AGENT);
+            add(pub, FOAF.NAME, F.createLiteral("Publisher " + i, "en"));
+            
+            IRI cp = F.createIRI(EX, "contact/" + i);
+            add(cp, RDF.TYPE, VCARD4.ORGANIZATION);
+            add(cp, VCARD4.FN, F.createLiteral("Contact " + i));
+            add(cp, VCARD4.HAS_EMAIL, F.createIRI("mailto:contact" + i + "@example.org"));
+        }
+    }
+    
+    /**
+     * Write a distribution
+     * 
+     * @param ds dataset number
+     * @param n distribution number
+     * @param defect defect or null
+     */
+    private void distribution(int ds, int n, Defect defect) {
+        IRI dist = F.createIRI(EX, "dist/" + ds + "/" + n);
+        String url = EX + "file/" + ds + "/" + n + ".csv";
+        
+        add(dist, RDF.TYPE, DCAT.DISTRIBUTION);
+        add(dist, DCAT.ACCESS_URL, (defect == Defect.LITERAL_ACCESS_URL) 
+                                    ? F.createLiteral(url) : F.createIRI(url));
+        if (defect == Defect.DUPLICATE_DOWNLOAD_URL) {
+            add(dist, DCAT.DOWNLOAD_URL, F.createIRI(EX, "file/0/0.csv"));
+        } else if (defect != Defect.NO_DOWNLOAD_URL) {
+            add(dist, DCAT.DOWNLOAD_URL, F.createIRI(url));
+        }
+        if (defect != Defect.NO_FORMAT) {
+            add(dist, DCTERMS.FORMAT, F.createIRI(MDR, "file-type/CSV"));
+        }
+        add(dist, DCTERMS.LANGUAGE, F.createIRI(MDR, "language/ENG"));
+        add(dist, DCTERMS.LICENSE, F.createIRI(EX, "license"));
+        add(dist, DGOV_LICENSE, F.createLiteral("CC0"));
+        add(dist, DCTERMS.SPATIAL, F.createIRI(EX, "spatial/be"));
+        add(dist, DGOV_SPATIAL, F.createLiteral("Belgium"));
+    }
+    
+    /**
+     * Write a dataset, optionally with a defect, and its distributions
+     * 
+     * @param catalog catalog IRI
+     * @param i dataset number
+     */
+    private void dataset(IRI catalog, int i) {
+        Defect defect = null;
+        if (rnd.nextDouble() < defectRate) {
+            defect = Defect.values()[rnd.nextInt(Defect.values().length)];
+        }
+        IRI ds = F.createIRI(EX, "dataset/" + i);
+        int pub = i % PUBLISHERS;
+        
+        add(catalog, DCAT.HAS_DATASET, ds);
+        add(ds, RDF.TYPE, DCAT.DATASET);
+        if (defect == Defect.NO_LANGUAGE_TAG) {
+            add(ds, DCTERMS.TITLE, F.createLiteral("Dataset " + i));
+        } else if (defect == Defect.DUPLICATE_TITLE) {
+            add(ds, DCTERMS.TITLE, F.createLiteral("Dataset " + pub, "en"));
+        } else if (defect != Defect.NO_TITLE) {
+            add(ds, DCTERMS.TITLE, F.createLiteral("Dataset " + i, "en"));
+        }
+        if (defect != Defect.NO_DESCRIPTION) {
+            add(ds, DCTERMS.DESCRIPTION, F.createLiteral("Description of dataset " + i, "en"));
+        }
+        add(ds, DCAT.KEYWORD, F.createLiteral("keyword " + (i % 100), "en"));
+        add(ds, DCTERMS.IDENTIFIER, F.createLiteral("id-" + 
+                                ((defect == Defect.DUPLICATE_IDENTIFIER) ? 0 : i)));
+        add(ds, DCTERMS.PUBLISHER, (defect == Defect.LITERAL_PUBLISHER)
+                                ? F.createLiteral("Publisher " + pub)
+                                : F.createIRI(EX, "publisher/" + pub));
+        add(ds, DCAT.CONTACT_POINT, F.createIRI(EX, "contact/" + pub));
+        add(ds, DCAT.THEME, (defect == Defect.LITERAL_THEME) 
+                                ? F.createLiteral("economy")
+                                : F.createIRI(MDR, "data-theme/ECON"));
+        if (defect != Defect.NO_THEME_MAPPING) {
+            add(ds, DGOV_THEME, F.createLiteral("Economy"));
+        }
+        add(ds, DCTERMS.ACCRUAL_PERIODICITY, F.createIRI(MDR, "frequency/DAILY"));
+        add(ds, DGOV_FREQ, F.createLiteral("daily"));
+        if (defect == Defect.CIRCULAR) {
+            add(ds, DCTERMS.RELATION, ds);
+        }
+        if (defect != Defect.NO_DISTRIBUTION) {
+            for (int n = 0; n < DISTRIBUTIONS; n++) {
+                add(ds, DCAT.HAS_DISTRIBUTION, F.createIRI(EX, "dist/" + i + "/" + n));
+                distribution(i, n, (n == 0) ? defect : null);
+            }
+        }
+    }
+    
+    /**
+     * Write the complete catalog
+     * 
+     * @param datasets number of datasets
+     */
+    private void write(int datasets) {
+        IRI catalog = F.createIRI(EX, "catalog");
+        
+        w.startRDF();
+        w.handleNamespace("dcat", DCAT.NAMESPACE);
+        w.handleNamespace("dcterms", DCTERMS.NAMESPACE);
+        w.handleNamespace("foaf", FOAF.NAMESPACE);
+        w.handleNamespace("vcard", VCARD4.NAMESPACE);
+        w.handleNamespace("dgov", DGOV);
+        catalog(catalog);
+        for (int i = 0; i < datasets; i++) {
+            dataset(catalog, i);
+        }
+        w.endRDF();
+    }
+    
+    /**
+     * Generate a catalog file.
+     * The same arguments always generate the same file.
+     * 
+     * @param file output file, the extension determines the format
+     * @param datasets number of datasets
+     * @param defectRate fraction of datasets with a defect (0.0 - 1.0)
+     * @param seed random seed
+     * @throws IOException 
+     */
+    public static void generate(Path file, int datasets, double defectRate, long seed) 
+                                                                throws IOException {
+        RDFFormat format = Rio.getWriterFormatForFileName(file.toString())
+                .orElseThrow(() -> new IOException("Unknown RDF format for " + file));
+        
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            CatalogGenerator gen = new CatalogGenerator(Rio.createWriter(format, os), 
+                                                    new Random(seed), defectRate);
+            gen.write(datasets);
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param w RDF writer
+     * @param rnd random generator
+     * @param defectRate fraction of datasets with a defect
+     */
+    private CatalogGenerator(RDFWriter w, Random rnd, double defectRate) {
+        this.w = w;
+        this.rnd = rnd;
+        this.defectRate = defectRate;
+    }
+    
+    /**
+     * Main
+     * 
+     * @param args output file, number of datasets, defect rate
+     * @throws IOException 
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CatalogGenerator <file.nt|.ttl|.xml> <datasets> [defect rate]");
+            System.exit(-1);
+        }
+        double rate = (args.length > 2) ? Double.parseDouble(args[2]) : 0.05;
+        generate(Paths.get(args[0]), Integer.parseInt(args[1]), rate, 42);
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator.benchmark;
+
+import be.fedict.rdf.validator.HtmlWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time needed to write a report with a large number of violations.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlWriterBenchmark {
+    @Param({"1000", "100000"})
+    public int rows;
+    
+    private final List<String> cols = List.of("subject", "property", "value");
+    private List<List<String>> values;
+    
+    @Setup
+    public void setup() {
+        values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(List.of("http://example.org/dataset/" + i, 
+                                "http://purl.org/dc/terms/title",
+                                "Dataset <" + i + "> & \"title\""));
+        }
+    }
+    
+    @Benchmark
+    public void write() throws IOException {
+        HtmlWriter w = new HtmlWriter(Writer.nullWriter());
+        w.start();
+        w.title("RDF Validation");
+        w.startSection("Ruleset");
+        w.startSection("Rule");
+        w.code("SELECT ?subject ?property ?value WHERE { ?subject ?property ?value }");
+        w.startTable("");
+        w.columnNames(cols);
+        for (List<String> row: values) {
+            w.row(row);
+        }
+        w.endTable();
+        w.text("Number of violations: " + rows);
+        w.endSection();
+        w.endSection();
+        w.end();
+    }
+}
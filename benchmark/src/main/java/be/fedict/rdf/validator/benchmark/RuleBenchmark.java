@@ -0,0 +1,159 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator.benchmark;
+
+import be.fedict.rdf.validator.Rule;
+import be.fedict.rdf.validator.Ruleset;
+import be.fedict.rdf.validator.Validator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time needed to evaluate a single built-in rule on a catalog already loaded
+ * in a memory store.
+ * New built-in rules should be added to the list of rules.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleBenchmark {
+    @Param({
+        "datagovbe/FrequencyMapping",
+        "datagovbe/LicenseMapping",
+        "datagovbe/SpatialMapping",
+        "datagovbe/ThemeMapping",
+        "dcatap11/AllClass",
+        "dcatap11/AllResourceType",
+        "dcatap11/AllTaxonomyMDR",
+        "dcatap11/AllTaxonomyType",
+        "dcatap11/AllURLType",
+        "dcatap11/CatalogDataset",
+        "dcatap11/CatalogDescription",
+        "dcatap11/CatalogPublisher",
+        "dcatap11/CatalogTitle",
+        "dcatap11/ContactpointName",
+        "dcatap11/DatasetDescription",
+        "dcatap11/DatasetTitle",
+        "dcatap11/DistributionAccessurl",
+        "dcatap11be/AllLanguageTag",
+        "dcatap11be/CatalogHomepage",
+        "dcatap11be/CatalogLanguage",
+        "dcatap11be/CatalogLicense",
+        "dcatap11be/CatalogModified",
+        "dcatap11be/CatalogSpatial",
+        "dcatap11be/CircularReference",
+        "dcatap11be/ContactpointMail",
+        "dcatap11be/DatasetContactpoint",
+        "dcatap11be/DatasetDistribution",
+        "dcatap11be/DatasetIdentifier",
+        "dcatap11be/DatasetIdentifierDuplicate",
+        "dcatap11be/DatasetPublisher",
+        "dcatap11be/DatasetTheme",
+        "dcatap11be/DistributionDownloadurl",
+        "dcatap11be/DistributionFormat",
+        "dcatap11be/DistributionLanguage",
+        "dcatap11be/DistributionLicense",
+        "duplicates/DatasetTitleDuplicate",
+        "duplicates/DistributionDownloadurlDuplicate"
+    })
+    public String rule;
+    
+    @Param({"10000"})
+    public int datasets;
+    
+    @Param({"0.05"})
+    public double defectRate;
+    
+    private Rule r;
+    private Repository repo;
+    private RepositoryConnection con;
+    
+    @Setup
+    public void setup() throws IOException {
+        String[] parts = rule.split("/");
+        List<Ruleset> rulesets = Ruleset.read(new String[] { Validator.BUILTIN + parts[0] });
+        r = rulesets.get(0).getRules().stream()
+                .filter(x -> x.getName().equals(parts[1] + ".txt"))
+                .findFirst()
+                .orElseThrow(() -> new IOException("Rule not found " + rule));
+        
+        Path file = Files.createTempFile("catalog", ".nt");
+        CatalogGenerator.generate(file, datasets, defectRate, 42);
+        repo = new SailRepository(new MemoryStore());
+        con = repo.getConnection();
+        con.add(file.toFile(), Validator.BASE_URI, RDFFormat.NTRIPLES);
+        Files.delete(file);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        con.close();
+        repo.shutDown();
+    }
+    
+    @Benchmark
+    public void evaluate(Blackhole bh) {
+        if (r.isProcedural()) {
+            r.getProcedural().validate(con, bh::consume);
+            return;
+        }
+        try (TupleQueryResult res = r.prepare(con).evaluate()) {
+            for (BindingSet bs: res) {
+                bh.consume(bs);
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.rdf4j.common.exception.RDF4JException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates multiple input files in one run, reading and parsing the rulesets
+ * only once.
+ * Writes one report per input file, and a summary with the number of 
+ * violations and the duration per file.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Batch {
+    private final static Logger LOG = LoggerFactory.getLogger(Batch.class);
+    
+    public final static String INDEX = "index.html";
+    
+    private final List<Ruleset> rulesets;
+    private final Path outdir;
+    private final Consumer<Validator> options;
+    private boolean metrics = false;
+    private List<ReportFormat> formats = List.of(ReportFormat.HTML);
+    private int maxRows = HtmlWriter.MAX_ROWS;
+    private WorkerPool pool;
+    
+    /**
+     * Expand an input specification into a list of files.
+     * The specification can be a file, a directory (all RDF files in it), 
+     * a glob pattern or a text file with one file per line prefixed with '@'.
+     * 
+     * @param spec input specification
+     * @return list of files
+     * @throws IOException 
+     */
+    public static List<Path> expand(String spec) throws IOException {
+        if (spec.startsWith("@")) {
+            return Files.readAllLines(Paths.get(spec.substring(1))).stream()
+                        .map(String::trim)
+                        .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                        .map(Paths::get)
+                        .collect(Collectors.toList());
+        }
+        
+        int glob = -1;
+        for (char c: "*?[{".toCharArray()) {
+            int pos = spec.indexOf(c);
+            if (pos >= 0 && (glob < 0 || pos < glob)) {
+                glob = pos;
+            }
+        }
+        if (glob >= 0) {
+            int sep = spec.lastIndexOf('/', glob);
+            Path base = Paths.get(sep >= 0 ? spec.substring(0, sep + 1) : ".");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + 
+                        (sep >= 0 ? spec : base.resolve(spec).toString()));
+            try (Stream<Path> files = Files.walk(base)) {
+                return files.filter(Files::isRegularFile)
+                            .filter(matcher::matches)
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        }
+        
+        Path p = Paths.get(spec);
+        if (Files.isDirectory(p)) {
+            try (Stream<Path> files = Files.list(p)) {
+                return files.filter(Files::isRegularFile)
+                            .filter(f -> InputParser.isRDF(f.toString()))
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        }
+        return List.of(p);
+    }
+    
+    /**
+     * Get a unique file name for the report of an input file
+     * 
+     * @param input input file
+     * @param used names already used
+     * @return path of the report
+     */
+    private Path getReportPath(Path input, Set<String> used) {
+        String name = input.getFileName().toString();
+        String ext = "." + formats.get(0).getExtension();
+        String report = name + ext;
+        for (int i = 2; !used.add(report) || report.equals(INDEX); i++) {
+            report = name + "-" + i + ext;
+        }
+        return outdir.resolve(report);
+    }
+    
+    /**
+     * Validate one input file and write its report
+     * 
+     * @param input input file
+     * @param report report file
+     * @return row of the summary: file, report, violations, duration, status
+     */
+    public List<String> validate(Path input, Path report) {
+        LOG.info("Validating {}, writing to {}", input, report);
+        
+        String violations = "";
+        String status = "OK";
+        long start = System.currentTimeMillis();
+        
+        SimpleResultWriter w = ReportFormat.create(report, formats, maxRows);
+        Validator validator = new Validator(input, w);
+        options.accept(validator);
+        try {
+            validator.init();
+            int issues = validator.validate(rulesets);
+            if (metrics) {
+                validator.getMetrics().export(report);
+            }
+            violations = String.valueOf(issues);
+        } catch (IOException | RDF4JException ex) {
+            LOG.error("Validation of {} failed {}", input, ex.getMessage());
+            status = "Failed: " + ex.getMessage();
+        } finally {
+            validator.close();
+            try {
+                // no-op when the report was completed
+                w.close();
+                if (violations.isEmpty()) {
+                    for (Path p: ReportFormat.getPaths(report, formats)) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            } catch (IOException ioe) {
+                LOG.warn("Could not remove partial report {}", ioe.getMessage());
+            }
+        }
+        long duration = System.currentTimeMillis() - start;
+        
+        String name = Files.exists(report) ? report.getFileName().toString() : "";
+        return Arrays.asList(input.toString(), name, violations, 
+                                    String.valueOf(duration), status);
+    }
+    
+    /**
+     * Validate the input files in the worker processes
+     * 
+     * @param inputs input files
+     * @param reports report file of each input file
+     * @return rows of the summary
+     * @throws IOException 
+     */
+    private List<List<String>> validate(List<Path> inputs, List<Path> reports) 
+                                                            throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            lines.add(inputs.get(i) + "\t" + reports.get(i));
+        }
+        List<List<String>> rows = new ArrayList<>();
+        List<WorkerPool.Job> jobs = pool.run(lines);
+        for (int i = 0; i < inputs.size(); i++) {
+            WorkerPool.Job job = jobs.get(i);
+            rows.add(job.isDone() ? job.getResult() 
+                    : Arrays.asList(inputs.get(i).toString(), "", "", "", 
+                                                "Failed: " + job.getError()));
+        }
+        return rows;
+    }
+    
+    /**
+     * Validate the input files, and write the reports and the summary
+     * 
+     * @param inputs input files
+     * @return total number of violations
+     * @throws IOException 
+     */
+    public int validate(List<Path> inputs) throws IOException {
+        int total = 0;
+        int failed = 0;
+        Set<String> used = new HashSet<>();
+        
+        Files.createDirectories(outdir);
+        
+        List<Path> reports = new ArrayList<>();
+        for (Path input: inputs) {
+            reports.add(getReportPath(input, used));
+        }
+        List<List<String>> rows;
+        if (pool != null) {
+            rows = validate(inputs, reports);
+        } else {
+            rows = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                rows.add(validate(inputs.get(i), reports.get(i)));
+            }
+        }
+        
+        HtmlWriter summary = new HtmlWriter(outdir.resolve(INDEX));
+        summary.start();
+        summary.title("RDF Validation summary");
+        summary.text("Number of files: " + inputs.size());
+        summary.text("Current time: " + new Date());
+        summary.startTable("");
+        summary.columnNames(Arrays.asList("File", "Report", "Violations", 
+                                            "Time (ms)", "Status"));
+        for (List<String> row: rows) {
+            if (row.get(2).isEmpty()) {
+                failed++;
+            } else {
+                total += Integer.parseInt(row.get(2));
+            }
+            summary.row(row);
+        }
+        summary.endTable();
+        summary.text("Total number of violations: " + total);
+        if (failed > 0) {
+            summary.text("Number of files that could not be validated: " + failed);
+        }
+        summary.end();
+        
+        return total;
+    }
+    
+    /**
+     * Validate the input files of the jobs read from standard input, in a 
+     * worker process.
+     * Each job is an input file and the path of its report.
+     * 
+     * @param port port of the coordinator
+     * @throws IOException 
+     */
+    public void work(int port) throws IOException {
+        WorkerPool.work(WorkerPool.connect(port), (line, out) -> {
+            String[] paths = line.split("\t", 2);
+            List<String> row = validate(Paths.get(paths[0]), Paths.get(paths[1]));
+            out.result(row);
+            return row.get(2).isEmpty() ? 0 : Integer.parseInt(row.get(2));
+        });
+    }
+    
+    /**
+     * Validate the input files in worker processes instead of in this process
+     * 
+     * @param pool worker processes
+     */
+    public void setWorkers(WorkerPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Set the formats of the report of each input file
+     * 
+     * @param formats report formats
+     */
+    public void setFormats(List<ReportFormat> formats) {
+        this.formats = formats;
+    }
+    
+    /**
+     * Set the maximum number of rows per table in the HTML report of each 
+     * input file
+     * 
+     * @param maxRows maximum number of rows, 0 for no maximum
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+    
+    /**
+     * Export the metrics of each validation next to its report
+     * 
+     * @param metrics true to export metrics
+     */
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param rulesets rulesets, already read
+     * @param outdir output directory for the reports
+     * @param options sets the options of each validator
+     */
+    public Batch(List<Ruleset> rulesets, Path outdir, Consumer<Validator> options) {
+        this.rulesets = rulesets;
+        this.outdir = outdir;
+        this.options = options;
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes CSV with one line per value of a violation, so all rules share the
+ * same columns: ruleset, rule, row number, column name and value.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class CsvWriter extends RowWriter {
+    private int row = 0;
+    
+    /**
+     * Quote a CSV field if needed (RFC 4180)
+     * 
+     * @param s field value
+     * @return field
+     */
+    private static String field(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 
+                && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+    
+    @Override
+    protected void begin() throws IOException {
+        out.write("ruleset,rule,row,column,value\r\n");
+    }
+    
+    @Override
+    protected void finish(int total) throws IOException {
+        // nothing to write
+    }
+    
+    @Override
+    protected void info(String text) throws IOException {
+        // not part of the table
+    }
+    
+    @Override
+    protected void violation(String ruleset, String rule, List<String> cols, 
+                                            List<String> values) throws IOException {
+        row++;
+        String prefix = field(ruleset) + "," + field(rule) + "," + row + ",";
+        for (int i = 0; i < values.size(); i++) {
+            String col = (i < cols.size()) ? cols.get(i) : String.valueOf(i);
+            out.write(prefix + field(col) + "," + field(values.get(i)) + "\r\n");
+        }
+    }
+    
+    @Override
+    protected void result(String ruleset, String rule, int violations, String status) {
+        row = 0;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param path output file
+     */
+    public CsvWriter(Path path) {
+        super(path);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output writer, will be closed at the end
+     */
+    public CsvWriter(Writer out) {
+        super(out);
+    }
+}
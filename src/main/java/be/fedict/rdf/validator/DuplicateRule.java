@@ -0,0 +1,120 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+/**
+ * Base class for rules reporting subjects sharing the same (combination of) 
+ * values, using a hash map instead of a self-join.
+ * Like a self-join, there is one violation for each pair of subjects.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public abstract class DuplicateRule implements ProceduralRule {
+    /**
+     * Add a subject to the group of subjects having the same key
+     * 
+     * @param groups subjects grouped by key
+     * @param key values
+     * @param subj subject
+     */
+    protected static void add(Map<List<Value>,Set<Resource>> groups, 
+                                List<Value> key, Resource subj) {
+        groups.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(subj);
+    }
+    
+    /**
+     * Get the subjects and objects of all triples with a given predicate
+     * 
+     * @param con RDF triplestore connection
+     * @param pred predicate
+     * @param handler called for each triple
+     */
+    protected static void scan(RepositoryConnection con, IRI pred, 
+                                                Consumer<Statement> handler) {
+        try (RepositoryResult<Statement> res = con.getStatements(null, pred, null)) {
+            while (res.hasNext()) {
+                handler.accept(res.next());
+            }
+        }
+    }
+    
+    /**
+     * Collect the keys of the subjects, using add()
+     * 
+     * @param con RDF triplestore connection
+     * @param groups subjects grouped by key
+     */
+    protected abstract void collect(RepositoryConnection con, 
+                                    Map<List<Value>,Set<Resource>> groups);
+    
+    /**
+     * Report the subjects of each group having more than one subject, once 
+     * for every other subject in the group (as a self-join would), followed 
+     * by the values of the key for as far as there are columns
+     * 
+     * @param con RDF triplestore connection
+     * @param violations called for each violation
+     */
+    @Override
+    public void validate(RepositoryConnection con, Consumer<List<String>> violations) {
+        Map<List<Value>,Set<Resource>> groups = new LinkedHashMap<>();
+        collect(con, groups);
+        int cols = getColumns().size();
+        
+        for (Map.Entry<List<Value>,Set<Resource>> group: groups.entrySet()) {
+            if (group.getValue().size() < 2) {
+                continue;
+            }
+            int others = group.getValue().size() - 1;
+            for (Resource subj: group.getValue()) {
+                List<String> row = new ArrayList<>();
+                row.add(subj.stringValue());
+                for (Value v: group.getKey()) {
+                    if (row.size() < cols) {
+                        row.add(v.stringValue());
+                    }
+                }
+                for (int i = 0; i < others; i++) {
+                    violations.accept(row);
+                }
+            }
+        }
+    }
+}
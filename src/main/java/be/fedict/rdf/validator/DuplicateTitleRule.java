@@ -0,0 +1,77 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+/**
+ * Datasets of the same publisher sharing the same title
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class DuplicateTitleRule extends DuplicateRule {
+    @Override
+    public List<String> getColumns() {
+        return List.of("dataset", "publisher", "title");
+    }
+    
+    @Override
+    public Footprint getFootprint() {
+        return new Footprint(Set.of(DCTERMS.PUBLISHER, DCTERMS.TITLE), 
+                            Set.of(DCAT.DATASET));
+    }
+    
+    @Override
+    protected void collect(RepositoryConnection con, 
+                            Map<List<Value>,Set<Resource>> groups) {
+        Map<Resource,List<Value>> publishers = new HashMap<>();
+        
+        scan(con, DCTERMS.PUBLISHER, st -> {
+            if (con.hasStatement(st.getSubject(), RDF.TYPE, DCAT.DATASET, false)) {
+                publishers.computeIfAbsent(st.getSubject(), k -> new ArrayList<>())
+                            .add(st.getObject());
+            }
+        });
+        scan(con, DCTERMS.TITLE, st -> {
+            List<Value> pubs = publishers.get(st.getSubject());
+            if (pubs != null) {
+                for (Value pub: pubs) {
+                    add(groups, List.of(pub, st.getObject()), st.getSubject());
+                }
+            }
+        });
+    }
+}
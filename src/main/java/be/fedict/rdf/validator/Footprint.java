@@ -0,0 +1,306 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.algebra.ArbitraryLengthPath;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.ZeroLengthPath;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * The predicates and classes (objects of rdf:type) that one or more rules can 
+ * observe, found by static analysis of the SPARQL queries.
+ * 
+ * A variable predicate restricted by a VALUES block counts as the listed 
+ * predicates, any other variable predicate means that all triples are needed.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Footprint {
+    private boolean allPredicates = false;
+    private boolean allClasses = false;
+    private final Set<IRI> predicates = new HashSet<>();
+    private final Set<IRI> classes = new HashSet<>();
+    
+    /**
+     * Collect the values of variables bound by VALUES blocks.
+     * Variables that are not always bound to an IRI are mapped to null.
+     * 
+     * @param expr query
+     * @return map of values per variable name
+     */
+    private static Map<String,Set<IRI>> getValues(TupleExpr expr) {
+        Map<String,Set<IRI>> values = new HashMap<>();
+        expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+            @Override
+            public void meet(BindingSetAssignment node) {
+                for (String name: node.getBindingNames()) {
+                    for (BindingSet bs: node.getBindingSets()) {
+                        Value v = bs.getValue(name);
+                        if (!(v instanceof IRI)) {
+                            values.put(name, null);
+                        } else if (!values.containsKey(name)) {
+                            values.put(name, new HashSet<>(Set.of((IRI) v)));
+                        } else if (values.get(name) != null) {
+                            values.get(name).add((IRI) v);
+                        }
+                    }
+                }
+            }
+        });
+        return values;
+    }
+    
+    /**
+     * Get the possible values of a variable in a triple pattern
+     * 
+     * @param var variable
+     * @param values values from VALUES blocks
+     * @return set of IRIs or null if any value is possible
+     */
+    private static Set<IRI> getPossible(Var var, Map<String,Set<IRI>> values) {
+        if (var.hasValue()) {
+            return (var.getValue() instanceof IRI) ? Set.of((IRI) var.getValue()) 
+                                                    : Set.of();
+        }
+        return values.get(var.getName());
+    }
+    
+    /**
+     * Analyze a query
+     * 
+     * @param expr query
+     */
+    private void analyze(TupleExpr expr) {
+        Map<String,Set<IRI>> values = getValues(expr);
+        
+        expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+            @Override
+            public void meet(StatementPattern node) {
+                Set<IRI> preds = getPossible(node.getPredicateVar(), values);
+                if (preds == null) {
+                    allPredicates = true;
+                    return;
+                }
+                for (IRI pred: preds) {
+                    if (!pred.equals(RDF.TYPE)) {
+                        predicates.add(pred);
+                        continue;
+                    }
+                    Set<IRI> cls = getPossible(node.getObjectVar(), values);
+                    if (cls == null) {
+                        allClasses = true;
+                    } else {
+                        classes.addAll(cls);
+                    }
+                }
+            }
+            
+            @Override
+            public void meet(ZeroLengthPath node) {
+                allPredicates = true;
+            }
+            
+            @Override
+            public void meet(ArbitraryLengthPath node) {
+                if (node.getMinLength() == 0) {
+                    allPredicates = true;
+                }
+                super.meet(node);
+            }
+        });
+    }
+    
+    /**
+     * Add another footprint to this one
+     * 
+     * @param other footprint
+     */
+    public void add(Footprint other) {
+        allPredicates |= other.allPredicates;
+        allClasses |= other.allClasses;
+        predicates.addAll(other.predicates);
+        classes.addAll(other.classes);
+    }
+    
+    /**
+     * Check if all triples can be observed
+     * 
+     * @return true if there is no restriction
+     */
+    public boolean isComplete() {
+        return allPredicates;
+    }
+    
+    /**
+     * Check if all rdf:type triples can be observed
+     * 
+     * @return true if there is no restriction on the classes
+     */
+    public boolean hasAllClasses() {
+        return allPredicates || allClasses;
+    }
+    
+    /**
+     * Get the predicates, except rdf:type
+     * 
+     * @return set of predicates
+     */
+    public Set<IRI> getPredicates() {
+        return predicates;
+    }
+    
+    /**
+     * Get the classes
+     * 
+     * @return set of classes
+     */
+    public Set<IRI> getClasses() {
+        return classes;
+    }
+    
+    /**
+     * Check if a triple can be observed
+     * 
+     * @param st statement
+     * @return true if observable
+     */
+    public boolean matches(Statement st) {
+        if (allPredicates) {
+            return true;
+        }
+        if (st.getPredicate().equals(RDF.TYPE)) {
+            return allClasses || classes.contains(st.getObject());
+        }
+        return predicates.contains(st.getPredicate());
+    }
+    
+    /**
+     * Wrap an RDF handler, only passing the triples that can be observed
+     * 
+     * @param next handler
+     * @return filtering handler
+     */
+    public RDFHandler filter(RDFHandler next) {
+        return new RDFHandlerWrapper(next) {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                if (matches(st)) {
+                    super.handleStatement(st);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Constructor for an empty footprint
+     */
+    public Footprint() {
+    }
+    
+    /**
+     * Get a footprint that can observe any triple
+     * 
+     * @return footprint
+     */
+    public static Footprint all() {
+        Footprint fp = new Footprint();
+        fp.allPredicates = true;
+        return fp;
+    }
+    
+    /**
+     * Constructor for a footprint with a known set of predicates and classes
+     * 
+     * @param predicates predicates
+     * @param classes classes
+     */
+    public Footprint(Set<IRI> predicates, Set<IRI> classes) {
+        this.predicates.addAll(predicates);
+        this.classes.addAll(classes);
+    }
+    
+    @Override
+    public String toString() {
+        if (allPredicates) {
+            return "all";
+        }
+        return "predicates=" + predicates.stream().map(IRI::stringValue)
+                                        .collect(Collectors.toCollection(TreeSet::new))
+            + " classes=" + (allClasses ? "all" 
+                                : classes.stream().map(IRI::stringValue)
+                                        .collect(Collectors.toCollection(TreeSet::new)));
+    }
+    
+    /**
+     * Get the footprint of a single rule
+     * 
+     * @param rule rule
+     * @return footprint
+     */
+    public static Footprint of(Rule rule) {
+        if (rule.isProcedural()) {
+            return rule.getProcedural().getFootprint();
+        }
+        Footprint fp = new Footprint();
+        fp.analyze(rule.getParsedQuery().getTupleExpr());
+        return fp;
+    }
+    
+    /**
+     * Get the combined footprint of all rules in the rulesets
+     * 
+     * @param rulesets rulesets
+     * @return footprint
+     */
+    public static Footprint of(List<Ruleset> rulesets) {
+        Footprint fp = new Footprint();
+        for (Ruleset ruleset: rulesets) {
+            for (Rule rule: ruleset.getRules()) {
+                fp.add(rule.getFootprint());
+            }
+        }
+        return fp;
+    }
+}
@@ -34,20 +34,38 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 
 /**
- * Quick and dirty HTML writer
+ * Quick and dirty HTML writer.
+ * Large tables can be capped, the remaining rows are then written to separate 
+ * pages linked from the report, so the report can still be opened in a browser.
  * 
  * @author Bart Hanssens <bart.hanssens@fedict.be>
  */
 public class HtmlWriter implements SimpleResultWriter {
+    // no maximum by default
+    public final static int MAX_ROWS = 0;
+    public final static int PAGE_SIZE = 10000;
+    private final static String PAGES = "-pages";
+    
 	private final String sep;
     private final Path path;
     private Writer out;
     
+    private static String style;
+    
+    private int maxRows = MAX_ROWS;
+    private String section = "";
+    private List<String> headers = List.of();
+    private int tables = 0;
+    private int rows = 0;
+    private HtmlWriter page;
+    private final List<Path> pages = new ArrayList<>();
+    
     /**
      * Write a HTML line in a somewhat pretty-printed format
      * 
@@ -59,6 +77,44 @@ public class HtmlWriter implements SimpleResultWriter {
         out.write(sep);
     }
     
+    /**
+     * Write text, escaping special HTML characters
+     * 
+     * @param s text
+     * @throws IOException 
+     */
+    private void escape(String s) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String rep;
+            switch (s.charAt(i)) {
+                case '<': rep = "&lt;"; break;
+                case '>': rep = "&gt;"; break;
+                case '&': rep = "&amp;"; break;
+                case '"': rep = "&quot;"; break;
+                default: continue;
+            }
+            out.write(s, start, i - start);
+            out.write(rep);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+    }
+    
+    /**
+     * Write an element with escaped text on one line
+     * 
+     * @param open opening tag(s)
+     * @param text text
+     * @param close closing tag(s)
+     * @throws IOException 
+     */
+    private void element(String open, String text, String close) throws IOException {
+        out.write(open);
+        escape(text);
+        writeln(close);
+    }
+    
     /**
      * Write start of details section
      * 
@@ -67,8 +123,9 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void startSection(String title) throws IOException {
+        section = title;
         writeln("<details open>");
-        writeln("<summary><h2>" + title + "</h2></summary>");
+        element("<summary><h2>", title, "</h2></summary>");
     }
     
     /**
@@ -89,9 +146,7 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void code(String code) throws IOException {
-        writeln("<pre><code>" + 
-                code.replaceAll("<", "&lt;").replaceAll(">", "&gt;") + 
-                "</code></pre>");
+        element("<pre><code>", code, "</code></pre>");
     }
     
     /**
@@ -102,28 +157,32 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void startTable(String title) throws IOException {
+        tables++;
+        rows = 0;
+        headers = List.of();
+        pages.clear();
         writeln("<table>");
         if (title != null && !title.isEmpty()) {
-            writeln("<caption>" + title + "</caption>");
+            element("<caption>", title, "</caption>");
         }
     }
     
     /**
      * Write a row / row header.
      * 
-     * @param tag
-     * @param tag
+     * @param cells
+     * @param open opening tag of a cell
+     * @param close closing tag of a cell
      * @throws IOException 
      */
-    private void writeRow(List<String> cells, String tag) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        sb.append("<tr>");
+    private void writeRow(List<String> cells, String open, String close) throws IOException {
+        out.write("<tr>");
         for(String cell: cells) {
-            sb.append("<").append(tag).append(">").append(cell)
-                    .append("</").append(tag).append(">");
+            out.write(open);
+            escape(cell);
+            out.write(close);
         }
-        sb.append("</tr>");
-        writeln(sb.toString());
+        writeln("</tr>");
     }
     
     /**
@@ -134,20 +193,64 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void columnNames(List<String> headers) throws IOException {
+        this.headers = List.copyOf(headers);
         writeln("<thead>");
-        writeRow(headers, "th");
+        writeRow(headers, "<th>", "</th>");
         writeln("</thead>");
     }
     
     /**
-     * Write one row of result table
+     * Start a new page for the rows that do not fit in the report
+     * 
+     * @throws IOException 
+     */
+    private void nextPage() throws IOException {
+        if (page != null) {
+            page.endTable();
+            page.end();
+        }
+        String name = path.getFileName().toString();
+        String gz = name.endsWith(RowWriter.GZIP) ? RowWriter.GZIP : "";
+        // only remove the extension of the report, e.g. feed.nt.html -> feed.nt-pages
+        String base = name.substring(0, name.length() - gz.length());
+        int dot = base.lastIndexOf('.');
+        Path dir = path.resolveSibling(((dot > 0) ? base.substring(0, dot) : base) + PAGES);
+        Files.createDirectories(dir);
+        
+        Path file = dir.resolve("table" + tables + "-" + (pages.size() + 1) + ".html" + gz);
+        pages.add(file);
+        
+        page = new HtmlWriter(file);
+        page.setMaxRows(0);
+        page.start();
+        page.title(section);
+        page.text("Page " + pages.size() + ", starting at row " + rows);
+        page.startTable("");
+        page.columnNames(headers);
+    }
+    
+    /**
+     * Write one row of result table.
+     * Rows beyond the maximum are written to separate pages, or only counted 
+     * when writing to a stream.
      * 
      * @param values
      * @throws IOException 
      */
     @Override
     public void row(List<String> values) throws IOException {
-        writeRow(values, "td");
+        rows++;
+        if (maxRows <= 0 || rows <= maxRows) {
+            writeRow(values, "<td>", "</td>");
+            return;
+        }
+        if (path == null) {
+            return;
+        }
+        if ((rows - maxRows - 1) % PAGE_SIZE == 0) {
+            nextPage();
+        }
+        page.row(values);
     }
     
     /**
@@ -158,6 +261,24 @@ public class HtmlWriter implements SimpleResultWriter {
     @Override
     public void endTable() throws IOException {
         writeln("</table>");
+        if (page != null) {
+            page.endTable();
+            page.end();
+            page = null;
+        }
+        if (maxRows > 0 && rows > maxRows) {
+            out.write("<p>Showing " + maxRows + " of " + rows + " rows");
+            if (!pages.isEmpty()) {
+                out.write(", more rows on page");
+                for (int i = 0; i < pages.size(); i++) {
+                    Path p = pages.get(i);
+                    out.write(" <a href=\"");
+                    escape(p.getParent().getFileName() + "/" + p.getFileName());
+                    out.write("\">" + (i + 1) + "</a>");
+                }
+            }
+            writeln("</p>");
+        }
         out.flush();
     }
     
@@ -169,7 +290,7 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void title(String title) throws IOException {
-        writeln("<h1>" + title + "</h1>");
+        element("<h1>", title, "</h1>");
         out.flush();
     }
     
@@ -181,7 +302,21 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void text(String text) throws IOException {
-        writeln("<p>" + text + "</p>");
+        element("<p>", text, "</p>");
+    }
+    
+    /**
+     * Get the stylesheet, reading it only once
+     * 
+     * @return stylesheet
+     */
+    private static synchronized String getStyle() {
+        if (style == null) {
+            InputStream s = ClassLoader.getSystemResourceAsStream("style.css");
+            style = new BufferedReader(new InputStreamReader(s)).lines()
+                                            .collect(Collectors.joining("\n"));
+        }
+        return style;
     }
     
     /**
@@ -190,11 +325,8 @@ public class HtmlWriter implements SimpleResultWriter {
      * @throws IOException 
      */
     public void style() throws IOException {
-        InputStream s = ClassLoader.getSystemResourceAsStream("style.css");
-        String style = new BufferedReader(new InputStreamReader(s)).lines()
-                                            .collect(Collectors.joining("\n"));
         writeln("<style>");
-        writeln(style);
+        writeln(getStyle());
         writeln("</style>");
     }
     /**
@@ -204,7 +336,9 @@ public class HtmlWriter implements SimpleResultWriter {
      */
     @Override
     public void start() throws IOException {
-        this.out = Files.newBufferedWriter(path);
+        if (path != null) {
+            this.out = RowWriter.open(path);
+        }
         
         writeln("<!DOCTYPE html>");
         writeln("<html>");
@@ -228,14 +362,47 @@ public class HtmlWriter implements SimpleResultWriter {
         writeln("</html>");
         this.out.close();
     }
+    
+    @Override
+    public void close() throws IOException {
+        if (page != null) {
+            page.close();
+            page = null;
+        }
+        if (out != null) {
+            out.close();
+        }
+    }
+    
+    /**
+     * Set the maximum number of rows of a table in the report.
+     * When writing to a file, the other rows are written to separate pages of
+     * 10000 rows, in a directory next to the report.
+     * 
+     * @param maxRows maximum number of rows, 0 for no maximum
+     */
+    public void setMaxRows(int maxRows) {
+        this.maxRows = Math.max(0, maxRows);
+    }
 
     /**
      * Constructor
      * 
-     * @param path output stream path
+     * @param path output stream path, compressed if the name ends with .gz
      */
     public HtmlWriter(Path path) {
         this.path = path;
         this.sep = System.lineSeparator();
     }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output writer, will be closed at the end
+     */
+    public HtmlWriter(Writer out) {
+        this.path = null;
+        this.out = out;
+        this.sep = System.lineSeparator();
+    }
 }
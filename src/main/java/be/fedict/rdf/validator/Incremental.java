@@ -0,0 +1,565 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.algebra.ArbitraryLengthPath;
+import org.eclipse.rdf4j.query.algebra.Difference;
+import org.eclipse.rdf4j.query.algebra.Exists;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.LeftJoin;
+import org.eclipse.rdf4j.query.algebra.Service;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.ZeroLengthPath;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State of incremental validation: the store and the results of each rule 
+ * of the previous run, and the changes compared to the current input.
+ * 
+ * The state directory contains two on-disk stores, used in turn: one with the
+ * triples of the previous run, the other one is reused for the current input.
+ * 
+ * Rules that cannot observe any of the changed predicates or classes keep 
+ * their previous results.
+ * Rules that only look at the triples of one subject at a time are only
+ * validated again for the subjects of changed triples.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Incremental {
+    private final static Logger LOG = LoggerFactory.getLogger(Incremental.class);
+    
+    private final static String CURRENT = "current";
+    private final static String STORE = "store-";
+    private final static String RESULTS = "results-";
+    private final static String EXT = ".bin.gz";
+    
+    private final Path dir;
+    private final String previous;
+    private final String next;
+    
+    private final Map<String,Result> before = new HashMap<>();
+    private final Map<String,Result> after = new ConcurrentHashMap<>();
+    
+    private final Set<IRI> predicates = new HashSet<>();
+    private final Set<Value> classes = new HashSet<>();
+    private final Set<Resource> subjects = new HashSet<>();
+    private final Set<String> subjectIds = new HashSet<>();
+    private boolean compared = false;
+    private long added = 0;
+    private long removed = 0;
+    
+    /**
+     * Violations of one rule
+     */
+    private static class Result {
+        private final List<String> cols;
+        private final List<List<String>> rows;
+        
+        public Result(List<String> cols, List<List<String>> rows) {
+            this.cols = cols;
+            this.rows = rows;
+        }
+    }
+    
+    /**
+     * Get the key of a rule: the name and the text, so the results of a rule
+     * that was modified are not reused.
+     * 
+     * @param rule rule
+     * @return key
+     */
+    private static String key(Rule rule) {
+        return rule.getName() + "\n" + rule.getQuery();
+    }
+    
+    /**
+     * Write a string
+     * 
+     * @param out output stream
+     * @param s string
+     * @throws IOException 
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+    
+    /**
+     * Read a string
+     * 
+     * @param in input stream
+     * @return string
+     * @throws IOException 
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Write a list of strings
+     * 
+     * @param out output stream
+     * @param l list
+     * @throws IOException 
+     */
+    private static void writeList(DataOutputStream out, List<String> l) throws IOException {
+        out.writeInt(l.size());
+        for (String s: l) {
+            writeString(out, s);
+        }
+    }
+    
+    /**
+     * Read a list of strings
+     * 
+     * @param in input stream
+     * @return list
+     * @throws IOException 
+     */
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<String> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            l.add(readString(in));
+        }
+        return l;
+    }
+    
+    /**
+     * Read the results of the previous run
+     * 
+     * @param file results file
+     * @throws IOException 
+     */
+    private void read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                                new GZIPInputStream(Files.newInputStream(file))))) {
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String key = readString(in);
+                List<String> cols = readList(in);
+                int nrows = in.readInt();
+                List<List<String>> rows = new ArrayList<>(nrows);
+                for (int j = 0; j < nrows; j++) {
+                    rows.add(readList(in));
+                }
+                before.put(key, new Result(cols, rows));
+            }
+        }
+    }
+    
+    /**
+     * Save the results of this run, and mark the store of this run as the
+     * previous one for the next run.
+     * Results that are only kept in memory are used for the next run.
+     * 
+     * @throws IOException 
+     */
+    public void save() throws IOException {
+        if (dir == null) {
+            before.clear();
+            before.putAll(after);
+            after.clear();
+            return;
+        }
+        Path file = dir.resolve(RESULTS + next + EXT);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(after.size());
+            for (Map.Entry<String,Result> e: after.entrySet()) {
+                writeString(out, e.getKey());
+                writeList(out, e.getValue().cols);
+                out.writeInt(e.getValue().rows.size());
+                for (List<String> row: e.getValue().rows) {
+                    writeList(out, row);
+                }
+            }
+        }
+        Path tmp = dir.resolve(CURRENT + ".tmp");
+        Files.writeString(tmp, next);
+        Files.move(tmp, dir.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING, 
+                                                StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Saved results of {} rules in {}", after.size(), dir);
+    }
+    
+    /**
+     * Get the directory of the store for the current input
+     * 
+     * @return directory
+     */
+    public Path getStoreDir() {
+        return dir.resolve(STORE + next);
+    }
+    
+    /**
+     * Get the directory of the store of the previous run
+     * 
+     * @return directory or null if there is no previous run
+     */
+    public Path getPreviousStoreDir() {
+        return (previous != null) ? dir.resolve(STORE + previous) : null;
+    }
+    
+    /**
+     * Get the number of triples added since the previous run
+     * 
+     * @return number of triples
+     */
+    public long getAdded() {
+        return added;
+    }
+    
+    /**
+     * Get the number of triples removed since the previous run
+     * 
+     * @return number of triples
+     */
+    public long getRemoved() {
+        return removed;
+    }
+    
+    /**
+     * Register a changed triple
+     * 
+     * @param st statement
+     */
+    private void change(Statement st) {
+        predicates.add(st.getPredicate());
+        if (st.getPredicate().equals(RDF.TYPE)) {
+            classes.add(st.getObject());
+        }
+        if (subjects.add(st.getSubject())) {
+            subjectIds.add(st.getSubject().stringValue());
+        }
+    }
+    
+    /**
+     * Compare the store of the previous run with the current one
+     * 
+     * @param prev connection to the store of the previous run
+     * @param cur connection to the current store
+     */
+    public void compare(RepositoryConnection prev, RepositoryConnection cur) {
+        try (RepositoryResult<Statement> res = cur.getStatements(null, null, null, false)) {
+            for (Statement st: res) {
+                if (!prev.hasStatement(st, false)) {
+                    added++;
+                    change(st);
+                }
+            }
+        }
+        try (RepositoryResult<Statement> res = prev.getStatements(null, null, null, false)) {
+            for (Statement st: res) {
+                if (!cur.hasStatement(st, false)) {
+                    removed++;
+                    change(st);
+                }
+            }
+        }
+        compared = true;
+        LOG.info("{} triples added, {} removed, {} subjects changed", 
+                                                added, removed, subjects.size());
+    }
+    
+    /**
+     * Check if a rule can observe any of the changes
+     * 
+     * @param rule rule
+     * @return true if the rule can observe a change
+     */
+    private boolean touches(Rule rule) {
+        if (predicates.isEmpty()) {
+            return false;
+        }
+        Footprint fp = rule.getFootprint();
+        if (fp.isComplete() || (fp.hasAllClasses() && !classes.isEmpty())) {
+            return true;
+        }
+        for (IRI pred: fp.getPredicates()) {
+            if (predicates.contains(pred)) {
+                return true;
+            }
+        }
+        for (IRI cls: fp.getClasses()) {
+            if (classes.contains(cls)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get the variable of the subject, if the rule only looks at the triples
+     * of one subject at a time: all triple patterns must have the same subject 
+     * variable, which is used outside optional parts and filters, and is 
+     * returned by the query.
+     * 
+     * @param rule rule
+     * @return name of the variable or null
+     */
+    private static String getFocus(Rule rule) {
+        if (rule.isProcedural()) {
+            return null;
+        }
+        TupleExpr expr = rule.getParsedQuery().getTupleExpr();
+        String[] focus = { null };
+        boolean[] local = { true, false };
+        
+        expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+            private int nested = 0;
+            
+            @Override
+            public void meet(StatementPattern node) {
+                Var subj = node.getSubjectVar();
+                if (subj.hasValue() || (focus[0] != null && !focus[0].equals(subj.getName()))) {
+                    local[0] = false;
+                }
+                focus[0] = subj.getName();
+                if (nested == 0) {
+                    local[1] = true;
+                }
+            }
+            
+            @Override
+            public void meet(Exists node) {
+                nested++;
+                super.meet(node);
+                nested--;
+            }
+            
+            @Override
+            public void meet(LeftJoin node) {
+                node.getLeftArg().visit(this);
+                nested++;
+                node.getRightArg().visit(this);
+                if (node.hasCondition()) {
+                    node.getCondition().visit(this);
+                }
+                nested--;
+            }
+            
+            @Override
+            public void meet(Difference node) {
+                node.getLeftArg().visit(this);
+                nested++;
+                node.getRightArg().visit(this);
+                nested--;
+            }
+            
+            @Override
+            public void meet(ArbitraryLengthPath node) {
+                local[0] = false;
+            }
+            
+            @Override
+            public void meet(ZeroLengthPath node) {
+                local[0] = false;
+            }
+            
+            @Override
+            public void meet(Group node) {
+                local[0] = false;
+            }
+            
+            @Override
+            public void meet(Slice node) {
+                local[0] = false;
+            }
+            
+            @Override
+            public void meet(Service node) {
+                local[0] = false;
+            }
+        });
+        
+        if (local[0] && local[1] && focus[0] != null 
+                            && expr.getBindingNames().contains(focus[0])) {
+            return focus[0];
+        }
+        return null;
+    }
+    
+    /**
+     * Get the violations of a rule without validating the rule on the whole 
+     * store, using the results of the previous run.
+     * 
+     * @param con connection to the current store
+     * @param rule rule
+     * @return violations or null if the rule must be validated on the whole store
+     */
+    public List<List<String>> revalidate(RepositoryConnection con, Rule rule) {
+        Result prev = before.get(key(rule));
+        if (!compared || prev == null) {
+            return null;
+        }
+        if (!touches(rule)) {
+            LOG.debug("Reusing results of {}", rule.getName());
+            put(rule, prev.cols, prev.rows);
+            return prev.rows;
+        }
+        String focus = getFocus(rule);
+        if (focus == null) {
+            return null;
+        }
+        
+        LOG.debug("Validating {} on {} changed subjects", rule.getName(), subjects.size());
+        List<String> cols = prev.cols;
+        List<List<String>> rows = new ArrayList<>();
+        int col = cols.indexOf(focus);
+        for (List<String> row: prev.rows) {
+            if (col < 0 || !subjectIds.contains(row.get(col))) {
+                rows.add(row);
+            }
+        }
+        
+        TupleQuery q = rule.prepare(con);
+        for (Resource subj: subjects) {
+            q.setBinding(focus, subj);
+            try (TupleQueryResult res = q.evaluate()) {
+                if (cols.isEmpty()) {
+                    cols = res.getBindingNames();
+                }
+                while (res.hasNext()) {
+                    BindingSet next = res.next();
+                    List<String> row = new ArrayList<>(cols.size());
+                    for (String c: cols) {
+                        row.add(next.getValue(c).stringValue());
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        put(rule, cols, rows);
+        return rows;
+    }
+    
+    /**
+     * Get the column names of a rule, as stored by this run
+     * 
+     * @param rule rule
+     * @return column names
+     */
+    public List<String> getColumns(Rule rule) {
+        Result res = after.get(key(rule));
+        return (res != null) ? res.cols : List.of();
+    }
+    
+    /**
+     * Store the violations of a rule
+     * 
+     * @param rule rule
+     * @param cols column names
+     * @param rows violations
+     */
+    public void put(Rule rule, List<String> cols, List<List<String>> rows) {
+        after.put(key(rule), new Result(cols, rows));
+    }
+    
+    /**
+     * Open the state of incremental validation, creating the directory if
+     * needed
+     * 
+     * @param dir state directory
+     * @return incremental state
+     * @throws IOException 
+     */
+    public static Incremental open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path current = dir.resolve(CURRENT);
+        String previous = Files.exists(current) ? Files.readString(current).strip() : null;
+        
+        Incremental inc = new Incremental(dir, previous);
+        if (previous != null) {
+            Path file = dir.resolve(RESULTS + previous + EXT);
+            if (Files.exists(file)) {
+                inc.read(file);
+                LOG.info("Read results of {} rules of previous run", inc.before.size());
+            }
+        }
+        return inc;
+    }
+    
+    /**
+     * Keep the results only in memory, for validating rules again on the same
+     * store: only new or modified rules are then validated.
+     * 
+     * @return incremental state
+     */
+    public static Incremental inMemory() {
+        Incremental inc = new Incremental(null, null);
+        inc.compared = true;
+        return inc;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param dir state directory
+     * @param previous name of the store of the previous run, or null
+     */
+    private Incremental(Path dir, String previous) {
+        this.dir = dir;
+        this.previous = previous;
+        this.next = "a".equals(previous) ? "b" : "a";
+    }
+}
@@ -0,0 +1,336 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.RDFParserRegistry;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse RDF from a file, a stream or a HTTP(S) URL, decompressing gzip, 
+ * bzip2 and zip archives (each file in the archive) on the fly.
+ * 
+ * The RDF format is taken from the (file) name, the content type or, 
+ * as a last resort, guessed from the first bytes.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class InputParser {
+    private final static Logger LOG = LoggerFactory.getLogger(InputParser.class);
+    
+    public final static String GZIP = ".gz";
+    public final static String BZIP2 = ".bz2";
+    public final static String ZIP = ".zip";
+    
+    private final static int BUFFER = 64 * 1024;
+    private final static int HEAD = 8192;
+    
+    private final static String TERM = "(<[^>]*>|_:\\S+)";
+    private final static String LITERAL = "\"(?:[^\"\\\\]|\\\\.)*\"(?:@\\S+|\\^\\^<[^>]*>)?";
+    private final static Pattern NTRIPLES = Pattern.compile(
+            TERM + "\\s+<[^>]*>\\s+(" + TERM + "|" + LITERAL + ")\\s*\\.\\s*");
+    private final static Pattern NQUADS = Pattern.compile(
+            TERM + "\\s+<[^>]*>\\s+(" + TERM + "|" + LITERAL + ")\\s+" + TERM + "\\s*\\.\\s*");
+    
+    private final static HttpClient HTTP = HttpClient.newBuilder()
+                                .followRedirects(HttpClient.Redirect.NORMAL)
+                                .connectTimeout(Duration.ofSeconds(30))
+                                .build();
+    
+    /**
+     * Check if the input is a HTTP(S) URL instead of a file
+     * 
+     * @param spec input
+     * @return true if URL
+     */
+    public static boolean isURL(String spec) {
+        String s = spec.toLowerCase(Locale.ROOT);
+        return s.startsWith("http://") || s.startsWith("https://");
+    }
+    
+    /**
+     * Remove the compression extension (if any) from a file name
+     * 
+     * @param name file name
+     * @return file name without .gz or .bz2
+     */
+    private static String stripCompression(String name) {
+        for (String ext: new String[] { GZIP, BZIP2 }) {
+            if (name.toLowerCase(Locale.ROOT).endsWith(ext)) {
+                return name.substring(0, name.length() - ext.length());
+            }
+        }
+        return name;
+    }
+    
+    /**
+     * Get the RDF format from a file name, ignoring .gz or .bz2
+     * 
+     * @param name file name
+     * @return format or null if unknown
+     */
+    public static RDFFormat getFormat(String name) {
+        return Rio.getParserFormatForFileName(stripCompression(name)).orElse(null);
+    }
+    
+    /**
+     * Check if a file name is a (compressed) RDF file or a zip archive
+     * 
+     * @param name file name
+     * @return true if it can be parsed
+     */
+    public static boolean isRDF(String name) {
+        return getFormat(name) != null || name.toLowerCase(Locale.ROOT).endsWith(ZIP);
+    }
+    
+    /**
+     * Get the compression from the first bytes, without consuming them
+     * 
+     * @param in input stream
+     * @return compression extension or null when not compressed
+     * @throws IOException 
+     */
+    private static String getCompression(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        byte[] b = in.readNBytes(4);
+        in.reset();
+        if (b.length >= 2 && (b[0] & 0xFF) == 0x1F && (b[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (b.length >= 3 && b[0] == 'B' && b[1] == 'Z' && b[2] == 'h') {
+            return BZIP2;
+        }
+        if (b.length >= 4 && b[0] == 'P' && b[1] == 'K' && b[2] == 3 && b[3] == 4) {
+            return ZIP;
+        }
+        return null;
+    }
+    
+    /**
+     * Check if a file is compressed, using the first bytes
+     * 
+     * @param path file
+     * @return true if compressed
+     * @throws IOException 
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(path), 16)) {
+            return getCompression(in) != null;
+        }
+    }
+    
+    /**
+     * Guess the RDF format from the first bytes, without consuming them
+     * 
+     * @param in input stream
+     * @return format or null
+     * @throws IOException 
+     */
+    private static RDFFormat sniff(BufferedInputStream in) throws IOException {
+        in.mark(HEAD);
+        byte[] b = in.readNBytes(HEAD);
+        in.reset();
+        
+        String head = new String(b, StandardCharsets.ISO_8859_1);
+        for (String line: head.split("\\R")) {
+            line = line.strip();
+            if (line.startsWith("\u00EF\u00BB\u00BF")) {
+                line = line.substring(3);
+            }
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String lower = line.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("<?xml") || lower.startsWith("<rdf:")) {
+                return head.contains("<TriX") ? RDFFormat.TRIX : RDFFormat.RDFXML;
+            }
+            if (line.startsWith("{") || line.startsWith("[")) {
+                return RDFFormat.JSONLD;
+            }
+            if (NQUADS.matcher(line).matches()) {
+                return RDFFormat.NQUADS;
+            }
+            if (NTRIPLES.matcher(line).matches()) {
+                return RDFFormat.NTRIPLES;
+            }
+            return RDFFormat.TURTLE;
+        }
+        return null;
+    }
+    
+    /**
+     * Parse one zip archive, each RDF file in the archive is parsed separately.
+     * Other files are skipped.
+     * 
+     * @param in input stream
+     * @param format format, used for all files without RDF file extension
+     * @param vf value factory
+     * @param handler handler receiving the triples of all files
+     * @throws IOException 
+     */
+    private static void parseZip(InputStream in, RDFFormat format, ValueFactory vf, 
+                                            RDFHandler handler) throws IOException {
+        RDFHandler files = new RDFHandlerWrapper(handler) {
+            @Override
+            public void startRDF() {
+            }
+            @Override
+            public void endRDF() {
+            }
+        };
+        
+        ZipInputStream zip = new ZipInputStream(in);
+        InputStream entry = new FilterInputStream(zip) {
+            @Override
+            public void close() {
+            }
+        };
+        handler.startRDF();
+        for (ZipEntry e = zip.getNextEntry(); e != null; e = zip.getNextEntry()) {
+            if (e.isDirectory()) {
+                continue;
+            }
+            if (!isRDF(e.getName()) && format == null) {
+                LOG.warn("Skipping {} in zip archive, unknown format", e.getName());
+                continue;
+            }
+            RDFFormat fmt = isRDF(e.getName()) ? getFormat(e.getName()) : format;
+            LOG.info("Parsing {} from zip archive", e.getName());
+            parse(entry, e.getName(), fmt, vf, files);
+        }
+        handler.endRDF();
+    }
+    
+    /**
+     * Parse a stream, which can be compressed or a zip archive
+     * 
+     * @param in input stream, not closed
+     * @param name name of the input, used in messages
+     * @param format RDF format or null to guess the format
+     * @param vf value factory
+     * @param handler handler receiving the triples
+     * @throws IOException 
+     */
+    public static void parse(InputStream in, String name, RDFFormat format, 
+                            ValueFactory vf, RDFHandler handler) throws IOException {
+        BufferedInputStream bin = new BufferedInputStream(in, BUFFER);
+        String compression = getCompression(bin);
+        if (ZIP.equals(compression)) {
+            parseZip(bin, format, vf, handler);
+            return;
+        }
+        
+        BufferedInputStream data = bin;
+        if (GZIP.equals(compression)) {
+            data = new BufferedInputStream(new GZIPInputStream(bin, BUFFER), BUFFER);
+        } else if (BZIP2.equals(compression)) {
+            data = new BufferedInputStream(new BZip2CompressorInputStream(bin, true), BUFFER);
+        }
+        
+        RDFFormat fmt = (format != null) ? format : sniff(data);
+        if (fmt == null || !RDFParserRegistry.getInstance().has(fmt)) {
+            throw new IOException("Could not determine RDF format of " + name);
+        }
+        LOG.debug("Parsing {} as {}, compression {}", name, fmt.getName(), compression);
+        
+        RDFParser parser = Rio.createParser(fmt, vf);
+        parser.setRDFHandler(handler);
+        parser.parse(data, Validator.BASE_URI);
+    }
+    
+    /**
+     * Download and parse a HTTP(S) URL, asking for any RDF format the parser
+     * supports.
+     * The format is taken from the URL, the content type or the first bytes.
+     * 
+     * @param url URL
+     * @param format RDF format or null to determine the format
+     * @param vf value factory
+     * @param handler handler receiving the triples
+     * @throws IOException 
+     */
+    public static void parse(URI url, RDFFormat format, ValueFactory vf, 
+                                            RDFHandler handler) throws IOException {
+        String accept = String.join(", ", RDFFormat.getAcceptParams(
+                RDFParserRegistry.getInstance().getKeys(), false, RDFFormat.TURTLE));
+        HttpRequest req = HttpRequest.newBuilder(url).header("Accept", accept).GET().build();
+        
+        HttpResponse<InputStream> resp;
+        try {
+            resp = HTTP.send(req, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        }
+        
+        try (InputStream body = resp.body()) {
+            if (resp.statusCode() != 200) {
+                throw new IOException("Could not download " + url + ", HTTP status " 
+                                                            + resp.statusCode());
+            }
+            String path = resp.uri().getPath();
+            String name = (path != null) ? path.substring(path.lastIndexOf('/') + 1) : "";
+            
+            RDFFormat fmt = (format != null) ? format : getFormat(name);
+            String type = resp.headers().firstValue("Content-Type").orElse("")
+                                                .split(";")[0].strip();
+            // text/plain is also used for other formats than N-Triples
+            if (fmt == null && !type.equalsIgnoreCase("text/plain")) {
+                fmt = Rio.getParserFormatForMIMEType(type).orElse(null);
+            }
+            LOG.info("Downloading {} as {}", url, (fmt != null) ? fmt.getName() : "unknown format");
+            parse(body, url.toString(), fmt, vf, handler);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes JSON Lines: one JSON object per violation, per rule and a summary
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class JsonLinesWriter extends RowWriter {
+    @Override
+    protected void begin() throws IOException {
+        // nothing to write
+    }
+    
+    @Override
+    protected void finish(int total) throws IOException {
+        out.write("{\"type\":\"summary\",\"violations\":" + total + "}\n");
+    }
+    
+    @Override
+    protected void info(String text) throws IOException {
+        out.write("{\"type\":\"info\",\"text\":" + quote(text) + "}\n");
+    }
+    
+    @Override
+    protected void violation(String ruleset, String rule, List<String> cols, 
+                                            List<String> values) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"type\":\"violation\",\"ruleset\":").append(quote(ruleset))
+            .append(",\"rule\":").append(quote(rule))
+            .append(",\"values\":{");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String col = (i < cols.size()) ? cols.get(i) : String.valueOf(i);
+            sb.append(quote(col)).append(':').append(quote(values.get(i)));
+        }
+        sb.append("}}\n");
+        out.write(sb.toString());
+    }
+    
+    @Override
+    protected void result(String ruleset, String rule, int violations, String status) 
+                                                                throws IOException {
+        out.write("{\"type\":\"rule\",\"ruleset\":" + quote(ruleset) 
+                    + ",\"rule\":" + quote(rule)
+                    + ",\"violations\":" + violations 
+                    + ",\"status\":" + quote(status) + "}\n");
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param path output file
+     */
+    public JsonLinesWriter(Path path) {
+        super(path);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output writer, will be closed at the end
+     */
+    public JsonLinesWriter(Writer out) {
+        super(out);
+    }
+}
@@ -25,7 +25,11 @@
 package be.fedict.rdf.validator;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -47,23 +51,125 @@ public class Main {
     private final static Logger LOG = LoggerFactory.getLogger(Main.class);
     
     private static final String[] BUILTINS = 
-                                    { "datagovbe", "dcatap11", "dcatap11be" };
+                                    { "datagovbe", "dcatap11", "dcatap11be", "duplicates" };
+    
+    // exit status is limited to 0..255, more violations must not wrap to 0
+    private static final int MAX_EXIT = 255;
     
     private static final Options OPTS = new Options();
     
     static {
         OPTS.addOption(Option.builder("i").longOpt("input")
-                            .desc("RDF input file or URL")
-                            .hasArg().argName("FILE").required()
+                            .desc("RDF input file or HTTP(S) URL, optionally compressed (.gz, .bz2, .zip)")
+                            .hasArg().argName("FILE")
+                            .build());
+        OPTS.addOption(Option.builder("b").longOpt("batch")
+                            .desc("Validate multiple files, directories, glob patterns or @lists")
+                            .hasArgs().argName("INPUT")
                             .build());
         OPTS.addOption(Option.builder("o").longOpt("output")
-                            .desc("HTML report output file")
-                            .hasArg().argName("FILE").required()
+                            .desc("Report output file, .html, .jsonl, .csv or .sarif, optionally .gz (directory in batch mode)")
+                            .hasArg().argName("FILE")
                             .build());
         OPTS.addOption(Option.builder("r").longOpt("rulesets")
                             .desc("Use rulesets with SPARQL rules (path or built-in)")
                             .hasArgs().argName("RULESET")
                             .build());
+        OPTS.addOption(Option.builder("t").longOpt("threads")
+                            .desc("Number of rules to validate in parallel (default 1)")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("load-threads")
+                            .desc("Number of threads for parsing large N-Triples / N-Quads files (default: number of processors)")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder("s").longOpt("store")
+                            .desc("Store: memory (default) or native:<dir>, reusing the store on later runs")
+                            .hasArg().argName("STORE")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("stream")
+                            .desc("Check triple-local rules while parsing, only store triples if other rules need them")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("lint")
+                            .desc("Only validate rules that can be checked while parsing, without a store")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("filter")
+                            .desc("Only load triples with predicates and classes used by the rules")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("partition")
+                            .desc("Validate rules with '# scope: dataset' per dataset, each in a small store")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("per-graph")
+                            .desc("Validate each named graph separately, in parallel (-t)")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("no-fusion")
+                            .desc("Query the store for each rule, also for rules checking missing properties of the same class")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("max-violations")
+                            .desc("Stop validating when the number of violations of all rules reaches N")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("max-rule-violations")
+                            .desc("Stop validating a rule when its number of violations reaches N")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("fail-fast")
+                            .desc("Stop at the first violation, validating the cheapest rules first")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("watch")
+                            .desc("Keep running, validate again when the input file or a rule directory changes")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("incremental")
+                            .desc("Keep store and results in a directory, only validate rules affected by changes since the previous run")
+                            .hasArg().argName("DIR")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("cache")
+                            .desc("Directory with binary snapshots of parsed input files, reused on later runs")
+                            .hasArg().argName("DIR")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("cache-size")
+                            .desc("Maximum size of the snapshot cache in MB (default 1024)")
+                            .hasArg().argName("MB")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("format")
+                            .desc("Report formats: html, jsonl, csv, sarif (default: extension of output file or html)")
+                            .hasArgs().valueSeparator(',').argName("FORMAT")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("max-rows")
+                            .desc("Maximum number of rows per table in the HTML report, other rows are written to separate pages (default: no maximum)")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("timeout")
+                            .desc("Default timeout of a rule in seconds, can be set per rule with a '# timeout:' line")
+                            .hasArg().argName("SECONDS")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("budget")
+                            .desc("Total time budget for validating all rules in seconds")
+                            .hasArg().argName("SECONDS")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("metrics")
+                            .desc("Add the slowest rules to the report, write metrics as JSON and Prometheus file next to it")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("serve")
+                            .desc("Run as a service on localhost, accepting RDF uploads on " + Server.PATH)
+                            .hasArg().argName("PORT")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("max-requests")
+                            .desc("Maximum number of uploads validated at the same time (service)")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("max-queue")
+                            .desc("Maximum number of uploads waiting (service, default 16)")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("workers")
+                            .desc("Validate in N worker processes, dividing the input files (batch) or the rules")
+                            .hasArg().argName("N")
+                            .build());
+        OPTS.addOption(Option.builder().longOpt("worker")
+                            .desc("Run as worker process of --workers (internal)")
+                            .hasArg().argName("PORT")
+                            .build());
         OPTS.addOption(Option.builder("h").longOpt("help")
                             .desc("Print this help text")
                             .build());
@@ -106,6 +212,225 @@ public class Main {
                         OPTS, buf.toString(), true);
     }
     
+    /**
+     * Get a numeric option, or exit when the number is invalid
+     * 
+     * @param cmd command line
+     * @param opt name of the option
+     * @param def default value
+     * @return number
+     */
+    private static int getInt(CommandLine cmd, String opt, int def) {
+        int val = def;
+        if (cmd.hasOption(opt)) {
+            try {
+                val = Integer.parseInt(cmd.getOptionValue(opt));
+            } catch (NumberFormatException nfe) {
+                LOG.error("Invalid number for {}: {}", opt, cmd.getOptionValue(opt));
+                printHelp();
+                System.exit(-2);
+            }
+        }
+        return val;
+    }
+    
+    /**
+     * Set the options of a validator
+     * 
+     * @param validator validator
+     * @param cmd command line
+     * @param threads number of threads
+     */
+    private static void configure(Validator validator, CommandLine cmd, int threads) {
+        // workers must not lock the same on-disk store or write the same cache
+        int worker = WorkerPool.getWorkerId();
+        String sub = (worker >= 0) ? "worker-" + worker : "";
+        validator.setThreads(threads);
+        validator.setLoadThreads(getInt(cmd, "load-threads", 
+                                    Runtime.getRuntime().availableProcessors()));
+        validator.setTimeout(getInt(cmd, "timeout", 0));
+        validator.setBudget(getInt(cmd, "budget", 0));
+        if (cmd.hasOption('s')) {
+            String store = cmd.getOptionValue('s');
+            if (store.startsWith(Validator.STORE_NATIVE)) {
+                store = Validator.STORE_NATIVE 
+                    + Paths.get(store.substring(Validator.STORE_NATIVE.length())).resolve(sub);
+            }
+            validator.setStore(store);
+        }
+        validator.setStreaming(cmd.hasOption("stream"));
+        validator.setLint(cmd.hasOption("lint"));
+        validator.setFilter(cmd.hasOption("filter"));
+        validator.setPartition(cmd.hasOption("partition"));
+        validator.setPerGraph(cmd.hasOption("per-graph"));
+        validator.setFusion(!cmd.hasOption("no-fusion"));
+        validator.setMetrics(cmd.hasOption("metrics"));
+        validator.setMaxViolations(getInt(cmd, "max-violations", 0));
+        validator.setMaxRuleViolations(getInt(cmd, "max-rule-violations", 0));
+        validator.setFailFast(cmd.hasOption("fail-fast"));
+        if (cmd.hasOption("cache")) {
+            long size = getInt(cmd, "cache-size", 1024) * 1024L * 1024L;
+            validator.setCache(new SnapshotCache(
+                                    Paths.get(cmd.getOptionValue("cache")).resolve(sub), size));
+        }
+    }
+    
+    /**
+     * Get the report formats from the command line or the output file
+     * 
+     * @param cmd command line
+     * @param outfile output file
+     * @return list of formats
+     */
+    private static List<ReportFormat> getFormats(CommandLine cmd, String outfile) {
+        if (cmd.hasOption("format")) {
+            try {
+                return ReportFormat.parse(cmd.getOptionValues("format"));
+            } catch (IOException ioe) {
+                LOG.error(ioe.getMessage());
+                printHelp();
+                System.exit(-2);
+            }
+        }
+        ReportFormat fmt = ReportFormat.fromPath(Paths.get(outfile));
+        return List.of((fmt != null) ? fmt : ReportFormat.HTML);
+    }
+    
+    /**
+     * Validate multiple input files, reading the rulesets only once
+     * 
+     * @param specs input files, directories, glob patterns or lists
+     * @param outdir output directory
+     * @param rules rulesets
+     * @param cmd command line
+     * @param threads number of threads
+     * @param pool worker processes or null
+     * @return total number of violations
+     * @throws IOException 
+     */
+    private static int batch(String[] specs, String outdir, String[] rules, 
+                            CommandLine cmd, int threads, WorkerPool pool) 
+                                                            throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (String spec: specs) {
+            inputs.addAll(Batch.expand(spec));
+        }
+        LOG.info("Validating {} files, writing to directory {}", inputs.size(), outdir);
+        
+        Batch batch = new Batch(Ruleset.read(rules), Paths.get(outdir), 
+                                        v -> configure(v, cmd, threads));
+        batch.setMetrics(cmd.hasOption("metrics"));
+        if (cmd.hasOption("format")) {
+            batch.setFormats(getFormats(cmd, outdir));
+        }
+        batch.setMaxRows(getInt(cmd, "max-rows", HtmlWriter.MAX_ROWS));
+        batch.setWorkers(pool);
+        return batch.validate(inputs);
+    }
+    
+    /**
+     * Get the command line arguments for the worker processes
+     * 
+     * @param args command line arguments of the coordinator
+     * @return arguments without the number of workers
+     */
+    private static List<String> getWorkerArgs(String[] args) {
+        List<String> l = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers")) {
+                i++;
+            } else if (!args[i].startsWith("--workers=")) {
+                l.add(args[i]);
+            }
+        }
+        return l;
+    }
+    
+    /**
+     * Validate the rules read from standard input in a worker process, 
+     * sending the results to the coordinator
+     * 
+     * @param infile input file
+     * @param rules rulesets
+     * @param cmd command line
+     * @param threads number of threads
+     * @param port port of the coordinator
+     * @throws IOException 
+     */
+    private static void work(String infile, String[] rules, CommandLine cmd, 
+                                        int threads, int port) throws IOException {
+        List<Ruleset> rulesets = Ruleset.read(rules);
+        List<Rule> all = new ArrayList<>();
+        for (Ruleset ruleset: rulesets) {
+            all.addAll(ruleset.getRules());
+        }
+        PipeWriter out = WorkerPool.connect(port);
+        
+        Validator validator = InputParser.isURL(infile) 
+                                    ? new Validator(URI.create(infile), null)
+                                    : new Validator(Paths.get(infile), null);
+        configure(validator, cmd, threads);
+        validator.setPerGraph(false);
+        validator.setPartition(false);
+        validator.setFailFast(false);
+        validator.setMaxViolations(0);
+        try {
+            validator.init();
+            long triples = validator.prepare(rulesets);
+            out.text("Number of triples: " + ((triples >= 0) ? triples : validator.size()));
+            WorkerPool.work(out, (line, pipe) -> 
+                                validator.validate(all.get(Integer.parseInt(line)), pipe));
+        } finally {
+            validator.close();
+        }
+    }
+    
+    /**
+     * Validate again each time the input file or a rule changes
+     * 
+     * @param infile input file
+     * @param outfile output file
+     * @param rules rulesets
+     * @param cmd command line
+     * @param threads number of threads
+     * @throws IOException 
+     */
+    private static void watch(String infile, String outfile, String[] rules, 
+                                CommandLine cmd, int threads) throws IOException {
+        Validator validator = new Validator(Paths.get(infile), null);
+        configure(validator, cmd, threads);
+        Watcher watcher = new Watcher(Paths.get(infile), rules, Paths.get(outfile), 
+                                getFormats(cmd, outfile), 
+                                getInt(cmd, "max-rows", HtmlWriter.MAX_ROWS), validator);
+        watcher.run();
+    }
+    
+    /**
+     * Start the validation service, reading the rulesets only once
+     * 
+     * @param rules rulesets
+     * @param cmd command line
+     * @param threads number of threads
+     * @throws IOException 
+     */
+    private static void serve(String[] rules, CommandLine cmd, int threads) 
+                                                            throws IOException {
+        int port = getInt(cmd, "serve", 8080);
+        int maxRequests = getInt(cmd, "max-requests", 
+                                Runtime.getRuntime().availableProcessors());
+        int maxQueue = getInt(cmd, "max-queue", 16);
+        int timeout = getInt(cmd, "timeout", 0);
+        int budget = getInt(cmd, "budget", 0);
+        
+        Server server = new Server(Ruleset.read(rules), port, maxRequests, maxQueue, 
+                                        v -> {
+                                            v.setThreads(threads);
+                                            v.setTimeout(timeout);
+                                            v.setBudget(budget);
+                                        });
+        server.start();
+    }
+    
     /**
      * Main
      * 
@@ -119,8 +444,29 @@ public class Main {
             System.exit(-2);
         }
         
+        String[] rules = cmd.getOptionValues('r');
+        if (rules == null || rules.length == 0) {
+            LOG.warn("No rulesets specified");
+            LOG.warn("Using built-in DCAT-AP rulesets");
+            rules = new String[]{ "builtin://dcatap11", "builtin://dcatap11be" };
+        }
+        
+        int threads = getInt(cmd, "t", 1);
+        int workers = getInt(cmd, "workers", 0);
+        
+        if (cmd.hasOption("serve")) {
+            try {
+                serve(rules, cmd, threads);
+            } catch (IOException ex) {
+                LOG.error("Could not start service {}", ex.getMessage());
+                System.exit(-5);
+            }
+            return;
+        }
+        
+        String[] specs = cmd.getOptionValues('b');
         String infile = cmd.getOptionValue('i');
-        if (infile == null || infile.isEmpty()) {
+        if (specs == null && (infile == null || infile.isEmpty())) {
             LOG.error("Missing input file or URL");
             printHelp();
             System.exit(-3);
@@ -133,28 +479,95 @@ public class Main {
             System.exit(-4);
         }
         
-        String[] rules = cmd.getOptionValues('r');
-        if (rules == null || rules.length == 0) {
-            LOG.warn("No rulesets specified");
-            LOG.warn("Using built-in DCAT-AP rulesets");
-            rules = new String[]{ "builtin://dcatap11", "builtin://dcatap11be" };
+        int issues = 0;
+        
+        if (cmd.hasOption("worker")) {
+            try {
+                int port = getInt(cmd, "worker", 0);
+                if (specs != null) {
+                    new Batch(Ruleset.read(rules), Paths.get(outfile), 
+                                        v -> configure(v, cmd, threads)).work(port);
+                } else {
+                    work(infile, rules, cmd, threads, port);
+                }
+            } catch (IOException ex) {
+                LOG.error("Worker failed {}", ex.getMessage());
+                System.exit(-4);
+            }
+            System.exit(0);
+        }
+        
+        WorkerPool pool = (workers > 0) ? new WorkerPool(workers, getWorkerArgs(args)) : null;
+        
+        if (specs != null) {
+            try {
+                issues = batch(specs, outfile, rules, cmd, threads, pool);
+            } catch (IOException ex) {
+                LOG.error("Batch validation failed {}", ex.getMessage());
+                System.exit(-4);
+            }
+            System.exit(Math.min(issues, MAX_EXIT));
         }
         
         LOG.info("Reading data from {}, writing to {}", infile, outfile);
-
-        int issues = 0;
+        
+        if (cmd.hasOption("watch")) {
+            if (InputParser.isURL(infile)) {
+                LOG.error("Cannot watch a URL");
+                System.exit(-3);
+            }
+            try {
+                watch(infile, outfile, rules, cmd, threads);
+            } catch (IOException ex) {
+                LOG.error("Watching failed {}", ex.getMessage());
+                System.exit(-4);
+            }
+            return;
+        }
+        
+        if (pool != null && cmd.hasOption("incremental")) {
+            LOG.warn("Option --workers is ignored with --incremental");
+        } else if (pool != null) {
+            for (String opt: new String[] { "per-graph", "partition", "fail-fast", 
+                                                "max-violations", "metrics" }) {
+                if (cmd.hasOption(opt)) {
+                    LOG.warn("Option --{} is ignored when validating rules in workers", opt);
+                }
+            }
+            try {
+                SimpleResultWriter w = ReportFormat.create(Paths.get(outfile), 
+                                getFormats(cmd, outfile), 
+                                getInt(cmd, "max-rows", HtmlWriter.MAX_ROWS));
+                issues = pool.validateRules(infile, Ruleset.read(rules), w);
+            } catch (IOException ex) {
+                LOG.error("Validation failed {}", ex.getMessage());
+                System.exit(-4);
+            }
+            System.exit(Math.min(issues, MAX_EXIT));
+        }
         
         try{
-            HtmlWriter w = new HtmlWriter(Paths.get(outfile));
-            Validator validator = new Validator(Paths.get(infile), w);
+            SimpleResultWriter w = ReportFormat.create(Paths.get(outfile), 
+                                getFormats(cmd, outfile), 
+                                getInt(cmd, "max-rows", HtmlWriter.MAX_ROWS));
+            Validator validator = InputParser.isURL(infile) 
+                                    ? new Validator(URI.create(infile), w)
+                                    : new Validator(Paths.get(infile), w);
+            configure(validator, cmd, threads);
+            if (cmd.hasOption("incremental")) {
+                validator.setIncremental(Paths.get(cmd.getOptionValue("incremental")));
+            }
             validator.init();
             issues  = validator.validate(rules);
             validator.close();
+            if (cmd.hasOption("metrics")) {
+                validator.getMetrics().export(Paths.get(outfile));
+            }
         } catch (IOException ex) {
             LOG.error("Validation failed {}", ex.getMessage());
             System.exit(-4);
         }
         
-        System.exit(issues);
+        System.exit(Math.min(issues, MAX_EXIT));
     }
 }
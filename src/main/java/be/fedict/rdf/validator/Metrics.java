@@ -0,0 +1,343 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of loading the triples and validating the rules, which can be 
+ * exported as JSON or as Prometheus text file.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Metrics {
+    public final static String JSON = ".metrics.json";
+    public final static String PROM = ".prom";
+    
+    private final static int SLOWEST = 10;
+    private final static double NANO = 1_000_000_000.0;
+    
+    private final Map<Rule,RuleMetrics> rules = new ConcurrentHashMap<>();
+    private List<Ruleset> rulesets = Collections.emptyList();
+    private long loadTime = -1;
+    private long triples = -1;
+    private long bytes = -1;
+    private long heap = -1;
+    private int violations = 0;
+    
+    /**
+     * Get the number of bytes allocated by the current thread so far
+     * 
+     * @return bytes or -1 if not supported
+     */
+    public static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                            .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+    
+    /**
+     * Add the metrics of a rule.
+     * Metrics of a rule that was already added, e.g. when validating each
+     * graph separately, are combined.
+     * 
+     * @param m rule metrics
+     */
+    public void add(RuleMetrics m) {
+        rules.merge(m.getRule(), m, RuleMetrics::merge);
+    }
+    
+    /**
+     * Get the metrics of a rule
+     * 
+     * @param rule rule
+     * @return rule metrics or null
+     */
+    public RuleMetrics get(Rule rule) {
+        return rules.get(rule);
+    }
+    
+    /**
+     * Remove the metrics of the rules of a previous run
+     */
+    public void clear() {
+        rules.clear();
+    }
+    
+    /**
+     * Set the rulesets, used to export the metrics in the same order as
+     * the rules in the report.
+     * 
+     * @param rulesets rulesets
+     */
+    public void setRulesets(List<Ruleset> rulesets) {
+        this.rulesets = rulesets;
+    }
+    
+    /**
+     * Set the load metrics.
+     * The heap usage is measured when calling this method.
+     * 
+     * @param time time to parse and load in nanoseconds
+     * @param triples number of triples parsed
+     * @param bytes size of the input or -1 if unknown
+     */
+    public void setLoad(long time, long triples, long bytes) {
+        this.loadTime = time;
+        this.triples = triples;
+        this.bytes = bytes;
+        Runtime rt = Runtime.getRuntime();
+        this.heap = rt.totalMemory() - rt.freeMemory();
+    }
+    
+    /**
+     * Set the total number of violations
+     * 
+     * @param violations number of violations
+     */
+    public void setViolations(int violations) {
+        this.violations = violations;
+    }
+    
+    /**
+     * Get the rule metrics in the order of the rulesets
+     * 
+     * @return list of ruleset name and rule metrics pairs
+     */
+    private List<Map.Entry<String,RuleMetrics>> ordered() {
+        List<Map.Entry<String,RuleMetrics>> list = new ArrayList<>();
+        for (Ruleset ruleset: rulesets) {
+            for (Rule rule: ruleset.getRules()) {
+                RuleMetrics m = rules.get(rule);
+                if (m != null) {
+                    list.add(Map.entry(ruleset.getName(), m));
+                }
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * Get the number of items per second
+     * 
+     * @param n number of items
+     * @return items per second or -1 if unknown
+     */
+    private double perSecond(long n) {
+        return (n >= 0 && loadTime > 0) ? n * NANO / loadTime : -1;
+    }
+    
+    /**
+     * Format nanoseconds as milliseconds
+     * 
+     * @param nanos nanoseconds
+     * @return string
+     */
+    private static String ms(long nanos) {
+        return (nanos < 0) ? "" : String.valueOf(nanos / 1_000_000);
+    }
+    
+    /**
+     * Format nanoseconds as seconds
+     * 
+     * @param nanos nanoseconds
+     * @return string
+     */
+    private static String sec(long nanos) {
+        return (nanos < 0) ? "-1" : String.format(Locale.ROOT, "%.6f", nanos / NANO);
+    }
+    
+    /**
+     * Write a section with the slowest rules to the report
+     * 
+     * @param sw result writer
+     * @throws IOException 
+     */
+    public void writeSlowest(SimpleResultWriter sw) throws IOException {
+        List<Map.Entry<String,RuleMetrics>> list = ordered();
+        list.sort(Comparator.comparingLong((Map.Entry<String,RuleMetrics> e) 
+                                                -> e.getValue().getTotal()).reversed());
+        
+        sw.startSection("Slowest rules");
+        sw.startTable("");
+        sw.columnNames(Arrays.asList("Ruleset", "Rule", "Time (ms)", 
+                                "First row (ms)", "Violations", "Allocated (MB)"));
+        for (Map.Entry<String,RuleMetrics> e: list.subList(0, Math.min(SLOWEST, list.size()))) {
+            RuleMetrics m = e.getValue();
+            sw.row(Arrays.asList(e.getKey(), m.getRule().getTitle(), ms(m.getTotal()), 
+                    ms(m.getFirstRow()), String.valueOf(m.getRows()), 
+                    (m.getAllocated() < 0) ? "" : String.valueOf(m.getAllocated() >> 20)));
+        }
+        sw.endTable();
+        if (loadTime >= 0) {
+            sw.text("Loading took " + ms(loadTime) + " ms, " 
+                            + Math.round(perSecond(triples)) + " triples per second");
+        }
+        sw.endSection();
+    }
+    
+    /**
+     * Write metrics as JSON
+     * 
+     * @param w writer
+     * @throws IOException 
+     */
+    public void writeJson(Writer w) throws IOException {
+        w.write("{\n");
+        w.write("  \"load\": {\"seconds\": " + sec(loadTime) 
+            + ", \"triples\": " + triples
+            + ", \"bytes\": " + bytes
+            + ", \"triplesPerSecond\": " + Math.round(perSecond(triples))
+            + ", \"bytesPerSecond\": " + Math.round(perSecond(bytes))
+            + ", \"heapAfterLoad\": " + heap + "},\n");
+        w.write("  \"violations\": " + violations + ",\n");
+        w.write("  \"rules\": [");
+        String sep = "\n";
+        for (Map.Entry<String,RuleMetrics> e: ordered()) {
+            RuleMetrics m = e.getValue();
+            w.write(sep);
+            w.write("    {\"ruleset\": " + RowWriter.quote(e.getKey())
+                + ", \"rule\": " + RowWriter.quote(m.getRule().getName())
+                + ", \"title\": " + RowWriter.quote(m.getRule().getTitle())
+                + ", \"prepareSeconds\": " + sec(m.getPrepare())
+                + ", \"evalSeconds\": " + sec(m.getEval())
+                + ", \"firstRowSeconds\": " + sec(m.getFirstRow())
+                + ", \"rows\": " + m.getRows()
+                + ", \"allocatedBytes\": " + m.getAllocated() + "}");
+            sep = ",\n";
+        }
+        w.write("\n  ]\n}\n");
+    }
+    
+    /**
+     * Quote a Prometheus label value, only backslash, double quote and 
+     * line feed are escaped
+     * 
+     * @param s label value
+     * @return quoted label value
+     */
+    private static String label(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"")
+                        .replace("\n", "\\n") + "\"";
+    }
+    
+    /**
+     * Write a Prometheus metric family header
+     * 
+     * @param w writer
+     * @param name metric name
+     * @param help description
+     * @throws IOException 
+     */
+    private static void header(Writer w, String name, String help) throws IOException {
+        w.write("# HELP " + name + " " + help + "\n");
+        w.write("# TYPE " + name + " gauge\n");
+    }
+    
+    /**
+     * Write metrics in Prometheus text format, e.g. for the node exporter
+     * textfile collector
+     * 
+     * @param w writer
+     * @throws IOException 
+     */
+    public void writePrometheus(Writer w) throws IOException {
+        header(w, "validator_load_seconds", "Time to parse and load the input");
+        w.write("validator_load_seconds " + sec(loadTime) + "\n");
+        header(w, "validator_load_triples", "Number of triples parsed");
+        w.write("validator_load_triples " + triples + "\n");
+        header(w, "validator_load_triples_per_second", "Parse throughput in triples");
+        w.write("validator_load_triples_per_second " + Math.round(perSecond(triples)) + "\n");
+        header(w, "validator_load_bytes_per_second", "Parse throughput in bytes");
+        w.write("validator_load_bytes_per_second " + Math.round(perSecond(bytes)) + "\n");
+        header(w, "validator_heap_after_load_bytes", "Heap used after loading");
+        w.write("validator_heap_after_load_bytes " + heap + "\n");
+        header(w, "validator_violations", "Total number of violations");
+        w.write("validator_violations " + violations + "\n");
+        
+        List<Map.Entry<String,RuleMetrics>> list = ordered();
+        String[][] families = {
+            { "validator_rule_prepare_seconds", "Time to prepare the query of a rule" },
+            { "validator_rule_eval_seconds", "Time to evaluate a rule" },
+            { "validator_rule_first_row_seconds", "Time to first violation of a rule" },
+            { "validator_rule_rows", "Number of violations of a rule" },
+            { "validator_rule_allocated_bytes", "Bytes allocated while evaluating a rule" }
+        };
+        for (int i = 0; i < families.length; i++) {
+            header(w, families[i][0], families[i][1]);
+            for (Map.Entry<String,RuleMetrics> e: list) {
+                RuleMetrics m = e.getValue();
+                String val;
+                switch (i) {
+                    case 0: val = sec(m.getPrepare()); break;
+                    case 1: val = sec(m.getEval()); break;
+                    case 2: val = sec(m.getFirstRow()); break;
+                    case 3: val = String.valueOf(m.getRows()); break;
+                    default: val = String.valueOf(m.getAllocated());
+                }
+                w.write(families[i][0] + "{ruleset=" + label(e.getKey()) 
+                        + ",rule=" + label(m.getRule().getName()) + "} " + val + "\n");
+            }
+        }
+    }
+    
+    /**
+     * Export the metrics as JSON and Prometheus files next to the report,
+     * e.g. report.metrics.json and report.prom for report.html
+     * 
+     * @param report path of the report
+     * @throws IOException 
+     */
+    public void export(Path report) throws IOException {
+        String base = report.getFileName().toString();
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) {
+            base = base.substring(0, dot);
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(report.resolveSibling(base + JSON))) {
+            writeJson(w);
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(report.resolveSibling(base + PROM))) {
+            writePrometheus(w);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the same results to multiple writers, e.g. to create reports in 
+ * several formats in one pass.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class MultiWriter implements SimpleResultWriter {
+    private final List<SimpleResultWriter> writers;
+    
+    @Override
+    public void start() throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.start();
+        }
+    }
+    
+    @Override
+    public void end() throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.end();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.close();
+        }
+    }
+    
+    @Override
+    public void title(String title) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.title(title);
+        }
+    }
+    
+    @Override
+    public void startSection(String title) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.startSection(title);
+        }
+    }
+    
+    @Override
+    public void endSection() throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.endSection();
+        }
+    }
+    
+    @Override
+    public void text(String text) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.text(text);
+        }
+    }
+    
+    @Override
+    public void code(String code) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.code(code);
+        }
+    }
+    
+    @Override
+    public void startTable(String title) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.startTable(title);
+        }
+    }
+    
+    @Override
+    public void columnNames(List<String> names) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.columnNames(names);
+        }
+    }
+    
+    @Override
+    public void row(List<String> values) throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.row(values);
+        }
+    }
+    
+    @Override
+    public void endTable() throws IOException {
+        for (SimpleResultWriter w: writers) {
+            w.endTable();
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param writers result writers
+     */
+    public MultiWriter(List<SimpleResultWriter> writers) {
+        this.writers = writers;
+    }
+}
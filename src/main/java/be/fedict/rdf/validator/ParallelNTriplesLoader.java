@@ -0,0 +1,331 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.rdf4j.common.exception.RDF4JException;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse a large N-Triples or N-Quads file using multiple threads.
+ * 
+ * The file is memory-mapped and split into chunks at line boundaries, each 
+ * chunk is parsed by its own parser. 
+ * Blank node labels are shared by all chunks, so the same label in different 
+ * chunks is the same blank node, just like with a single parser.
+ * The statements are passed in batches to one handler, on the calling thread.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ParallelNTriplesLoader {
+    private final static Logger LOG = LoggerFactory.getLogger(ParallelNTriplesLoader.class);
+    
+    public final static long MIN_SIZE = 16L * 1024 * 1024;
+    private final static long CHUNK_SIZE = 32L * 1024 * 1024;
+    private final static int BATCH = 10_000;
+    private final static List<Statement> END = new ArrayList<>();
+    
+    private final Path path;
+    private final RDFFormat format;
+    private final ValueFactory vf;
+    private final int threads;
+    private final String prefix;
+    
+    /**
+     * Read-only input stream on a byte buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+        
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+        
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+        
+        public ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+    }
+    
+    /**
+     * Check if a file can be parsed in parallel: large uncompressed N-Triples 
+     * or N-Quads 
+     * 
+     * @param path file
+     * @param format RDF format
+     * @return true if file can be split 
+     * @throws IOException 
+     */
+    public static boolean canLoad(Path path, RDFFormat format) throws IOException {
+        return (RDFFormat.NTRIPLES.equals(format) || RDFFormat.NQUADS.equals(format))
+                    && Files.size(path) >= MIN_SIZE && !InputParser.isCompressed(path);
+    }
+    
+    /**
+     * Get the position after the first end of line at or after a position
+     * 
+     * @param ch file channel
+     * @param pos position
+     * @param size size of the file
+     * @return position of the next line or size of the file
+     * @throws IOException 
+     */
+    private static long nextLine(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8192);
+        while (pos < size) {
+            b.clear();
+            int r = ch.read(b, pos);
+            if (r <= 0) {
+                break;
+            }
+            for (int i = 0; i < r; i++) {
+                if (b.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += r;
+        }
+        return size;
+    }
+    
+    /**
+     * Split the file into chunks of complete lines
+     * 
+     * @param ch file channel
+     * @return list of start and end positions
+     * @throws IOException 
+     */
+    private List<long[]> split(FileChannel ch) throws IOException {
+        long size = ch.size();
+        long n = Math.max(threads, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        long step = Math.max(1, size / n);
+        
+        List<long[]> chunks = new ArrayList<>();
+        for (long start = 0; start < size; ) {
+            long end = nextLine(ch, Math.min(size, start + step), size);
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+        return chunks;
+    }
+    
+    /**
+     * Use the same blank node for the same label in all chunks
+     * 
+     * @param v value
+     * @return value, with blank node label prefixed 
+     */
+    private Value scope(Value v) {
+        return (v instanceof BNode) ? vf.createBNode(prefix + ((BNode) v).getID()) : v;
+    }
+    
+    /**
+     * Use the same blank node for the same label in all chunks
+     * 
+     * @param st statement
+     * @return statement, with blank node labels prefixed
+     */
+    private Statement scope(Statement st) {
+        if (!(st.getSubject() instanceof BNode) && !(st.getObject() instanceof BNode)
+                && !(st.getContext() instanceof BNode)) {
+            return st;
+        }
+        Resource subj = (Resource) scope(st.getSubject());
+        Value obj = scope(st.getObject());
+        if (st.getContext() == null) {
+            return vf.createStatement(subj, st.getPredicate(), obj);
+        }
+        return vf.createStatement(subj, st.getPredicate(), obj, (Resource) scope(st.getContext()));
+    }
+    
+    /**
+     * Parse one chunk, putting batches of statements on the queue
+     * 
+     * @param ch file channel
+     * @param start start position
+     * @param end end position
+     * @param queue queue
+     * @throws IOException 
+     */
+    private void parseChunk(FileChannel ch, long start, long end, 
+                        BlockingQueue<List<Statement>> queue) throws IOException {
+        RDFParser parser = Rio.createParser(format, vf);
+        parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+        parser.setRDFHandler(new AbstractRDFHandler() {
+            private List<Statement> batch = new ArrayList<>(BATCH);
+            
+            private void flush() {
+                try {
+                    queue.put(batch);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RDFHandlerException(ie);
+                }
+                batch = new ArrayList<>(BATCH);
+            }
+            
+            @Override
+            public void handleStatement(Statement st) {
+                batch.add(scope(st));
+                if (batch.size() >= BATCH) {
+                    flush();
+                }
+            }
+            
+            @Override
+            public void endRDF() {
+                if (!batch.isEmpty()) {
+                    flush();
+                }
+            }
+        });
+        
+        ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        try {
+            parser.parse(new ByteBufferInputStream(buf), Validator.BASE_URI);
+        } catch (RDFParseException pe) {
+            throw new RDFParseException(pe.getMessage() + " (chunk starting at byte " 
+                                                            + start + ")", pe);
+        }
+    }
+    
+    /**
+     * Parse the file
+     * 
+     * @param handler handler receiving the statements
+     * @throws IOException 
+     */
+    public void parse(RDFHandler handler) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> chunks = split(ch);
+            LOG.info("Parsing {} in {} chunks using {} threads", path, chunks.size(), threads);
+            
+            BlockingQueue<List<Statement>> queue = new ArrayBlockingQueue<>(threads * 4);
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (long[] chunk: chunks) {
+                tasks.add(pool.submit(() -> {
+                    try {
+                        parseChunk(ch, chunk[0], chunk[1], queue);
+                    } finally {
+                        queue.put(END);
+                    }
+                    return null;
+                }));
+            }
+            
+            handler.startRDF();
+            for (int done = 0; done < chunks.size(); ) {
+                List<Statement> batch = queue.take();
+                if (batch == END) {
+                    done++;
+                    continue;
+                }
+                for (Statement st: batch) {
+                    handler.handleStatement(st);
+                }
+            }
+            for (Future<Void> task: tasks) {
+                task.get();
+            }
+            handler.endRDF();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RDF4JException) {
+                throw (RDF4JException) cause;
+            }
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param path N-Triples or N-Quads file
+     * @param format RDF format
+     * @param vf value factory
+     * @param threads number of threads
+     */
+    public ParallelNTriplesLoader(Path path, RDFFormat format, ValueFactory vf, int threads) {
+        this.path = path;
+        this.format = format;
+        this.vf = vf;
+        this.threads = Math.max(1, threads);
+        this.prefix = "genid-" + UUID.randomUUID().toString().replace("-", "") + "-";
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.vocabulary.DCAT;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+/**
+ * Split a catalog into datasets, each dataset together with the resources it
+ * refers to (distributions, contact points, publisher...).
+ * 
+ * Other datasets and catalogs are not followed, resources shared by several 
+ * datasets (e.g. a publisher) are part of each of these datasets.
+ * Resources not referred to by any dataset form a remainder partition.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Partitioner {
+    
+    /**
+     * Get all datasets
+     * 
+     * @param con RDF triplestore connection
+     * @return list of datasets
+     */
+    public static List<Resource> getDatasets(RepositoryConnection con) {
+        List<Resource> datasets = new ArrayList<>();
+        Set<Resource> seen = new HashSet<>();
+        try (RepositoryResult<Statement> res = 
+                            con.getStatements(null, RDF.TYPE, DCAT.DATASET, false)) {
+            for (Statement st: res) {
+                if (seen.add(st.getSubject())) {
+                    datasets.add(st.getSubject());
+                }
+            }
+        }
+        return datasets;
+    }
+    
+    /**
+     * Check if a resource is a dataset or catalog, which is not followed
+     * 
+     * @param con RDF triplestore connection
+     * @param res resource
+     * @return true if dataset or catalog
+     */
+    private static boolean isBoundary(RepositoryConnection con, Resource res) {
+        return con.hasStatement(res, RDF.TYPE, DCAT.DATASET, false) ||
+                con.hasStatement(res, RDF.TYPE, DCAT.CATALOG, false);
+    }
+    
+    /**
+     * Get the triples of resources and of all resources they refer to,
+     * directly or indirectly
+     * 
+     * @param con RDF triplestore connection
+     * @param start resources to start from
+     * @return triples
+     */
+    private static Model closure(RepositoryConnection con, Collection<Resource> start) {
+        Model m = new LinkedHashModel();
+        Deque<Resource> todo = new ArrayDeque<>(start);
+        Set<Resource> seen = new HashSet<>(start);
+        
+        while (!todo.isEmpty()) {
+            Resource subj = todo.poll();
+            try (RepositoryResult<Statement> res = con.getStatements(subj, null, null, false)) {
+                for (Statement st: res) {
+                    m.add(st);
+                    Value obj = st.getObject();
+                    if (obj instanceof Resource && !st.getPredicate().equals(RDF.TYPE)
+                                    && seen.add((Resource) obj) 
+                                    && !isBoundary(con, (Resource) obj)) {
+                        todo.add((Resource) obj);
+                    }
+                }
+            }
+        }
+        return m;
+    }
+    
+    /**
+     * Get the triples of a dataset and of all resources it refers to,
+     * directly or indirectly
+     * 
+     * @param con RDF triplestore connection
+     * @param dataset dataset
+     * @return triples
+     */
+    public static Model closure(RepositoryConnection con, Resource dataset) {
+        return closure(con, List.of(dataset));
+    }
+    
+    /**
+     * Get the triples of all resources that are not part of a dataset (e.g. 
+     * the catalog, or a distribution no dataset refers to), and of all 
+     * resources they refer to.
+     * 
+     * @param con RDF triplestore connection
+     * @param covered subjects of the triples of the datasets
+     * @return triples
+     */
+    public static Model remainder(RepositoryConnection con, Set<Resource> covered) {
+        Set<Resource> start = new LinkedHashSet<>();
+        try (RepositoryResult<Statement> res = con.getStatements(null, null, null, false)) {
+            for (Statement st: res) {
+                if (!covered.contains(st.getSubject())) {
+                    start.add(st.getSubject());
+                }
+            }
+        }
+        return closure(con, start);
+    }
+}
@@ -0,0 +1,342 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result writer sending the results of a worker process to the coordinator 
+ * over a local socket, in a simple binary format.
+ * The results of each job are framed by a job and a done record, so the
+ * coordinator knows which jobs were completed when a worker crashes.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class PipeWriter implements SimpleResultWriter {
+    private final static byte START = 1;
+    private final static byte END = 2;
+    private final static byte TITLE = 3;
+    private final static byte SECTION = 4;
+    private final static byte END_SECTION = 5;
+    private final static byte TEXT = 6;
+    private final static byte CODE = 7;
+    private final static byte TABLE = 8;
+    private final static byte COLUMNS = 9;
+    private final static byte ROW = 10;
+    private final static byte END_TABLE = 11;
+    private final static byte JOB = 20;
+    private final static byte RESULT = 21;
+    private final static byte DONE = 22;
+    private final static byte HELLO = 23;
+    
+    /**
+     * Receives the jobs and results read from a pipe
+     */
+    public interface Listener {
+        /**
+         * Worker connected
+         * 
+         * @param token token identifying the worker
+         * @throws IOException if the token is not valid
+         */
+        public void hello(String token) throws IOException;
+        
+        /**
+         * Start of the results of a job
+         * 
+         * @param job job number
+         * @return writer for the results of the job
+         */
+        public SimpleResultWriter job(int job);
+        
+        /**
+         * Result of a job, other than the report (e.g. a summary row)
+         * 
+         * @param job job number
+         * @param values values
+         */
+        public void result(int job, List<String> values);
+        
+        /**
+         * End of a job
+         * 
+         * @param job job number
+         * @param violations number of violations
+         */
+        public void done(int job, int violations);
+    }
+    
+    private final DataOutputStream out;
+    
+    /**
+     * Write a string
+     * 
+     * @param s string
+     * @throws IOException 
+     */
+    private void writeString(String s) throws IOException {
+        byte[] b = (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+    
+    /**
+     * Write a record with one string
+     * 
+     * @param op type of record
+     * @param s string
+     * @throws IOException 
+     */
+    private void write(byte op, String s) throws IOException {
+        out.writeByte(op);
+        writeString(s);
+    }
+    
+    /**
+     * Write a record with a list of strings
+     * 
+     * @param op type of record
+     * @param l list of strings
+     * @throws IOException 
+     */
+    private void write(byte op, List<String> l) throws IOException {
+        out.writeByte(op);
+        out.writeInt(l.size());
+        for (String s: l) {
+            writeString(s);
+        }
+    }
+    
+    @Override
+    public void start() throws IOException {
+        out.writeByte(START);
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    @Override
+    public void title(String title) throws IOException {
+        write(TITLE, title);
+    }
+
+    @Override
+    public void startSection(String title) throws IOException {
+        write(SECTION, title);
+    }
+
+    @Override
+    public void endSection() throws IOException {
+        out.writeByte(END_SECTION);
+    }
+
+    @Override
+    public void text(String text) throws IOException {
+        write(TEXT, text);
+    }
+
+    @Override
+    public void code(String code) throws IOException {
+        write(CODE, code);
+    }
+
+    @Override
+    public void startTable(String title) throws IOException {
+        write(TABLE, title);
+    }
+
+    @Override
+    public void columnNames(List<String> names) throws IOException {
+        write(COLUMNS, names);
+    }
+
+    @Override
+    public void row(List<String> values) throws IOException {
+        write(ROW, values);
+    }
+
+    @Override
+    public void endTable() throws IOException {
+        out.writeByte(END_TABLE);
+    }
+    
+    /**
+     * Start the results of a job
+     * 
+     * @param job job number
+     * @throws IOException 
+     */
+    public void job(int job) throws IOException {
+        out.writeByte(JOB);
+        out.writeInt(job);
+        out.flush();
+    }
+    
+    /**
+     * Identify the worker to the coordinator
+     * 
+     * @param token token received from the coordinator
+     * @throws IOException 
+     */
+    public void hello(String token) throws IOException {
+        write(HELLO, token);
+        out.flush();
+    }
+    
+    /**
+     * Send a result of the current job, other than the report
+     * 
+     * @param values values
+     * @throws IOException 
+     */
+    public void result(List<String> values) throws IOException {
+        write(RESULT, values);
+    }
+    
+    /**
+     * End the current job, flushing the pipe
+     * 
+     * @param job job number
+     * @param violations number of violations
+     * @throws IOException 
+     */
+    public void done(int job, int violations) throws IOException {
+        out.writeByte(DONE);
+        out.writeInt(job);
+        out.writeInt(violations);
+        out.flush();
+    }
+    
+    /**
+     * Flush and close the pipe
+     * 
+     * @throws IOException 
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    /**
+     * Read a string
+     * 
+     * @param in input stream
+     * @return string
+     * @throws IOException 
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read a list of strings
+     * 
+     * @param in input stream
+     * @return list of strings
+     * @throws IOException 
+     */
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> l = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            l.add(readString(in));
+        }
+        return l;
+    }
+    
+    /**
+     * Read the results of a worker process until the end of the pipe.
+     * Results outside a job are written to the header writer.
+     * 
+     * @param in input stream
+     * @param header writer for results outside a job
+     * @param listener receives the jobs
+     * @throws IOException when the pipe contains an unknown record
+     */
+    public static void read(DataInputStream in, SimpleResultWriter header, 
+                                        Listener listener) throws IOException {
+        SimpleResultWriter w = header;
+        int job = -1;
+        
+        while (true) {
+            int op = in.read();
+            if (op < 0) {
+                return;
+            }
+            try {
+                switch (op) {
+                    case START: w.start(); break;
+                    case END: w.end(); break;
+                    case TITLE: w.title(readString(in)); break;
+                    case SECTION: w.startSection(readString(in)); break;
+                    case END_SECTION: w.endSection(); break;
+                    case TEXT: w.text(readString(in)); break;
+                    case CODE: w.code(readString(in)); break;
+                    case TABLE: w.startTable(readString(in)); break;
+                    case COLUMNS: w.columnNames(readList(in)); break;
+                    case ROW: w.row(readList(in)); break;
+                    case END_TABLE: w.endTable(); break;
+                    case HELLO: listener.hello(readString(in)); break;
+                    case JOB: 
+                        job = in.readInt(); 
+                        w = listener.job(job); 
+                        break;
+                    case RESULT: listener.result(job, readList(in)); break;
+                    case DONE:
+                        int done = in.readInt();
+                        listener.done(done, in.readInt());
+                        job = -1;
+                        w = header;
+                        break;
+                    default: throw new IOException("Unknown record type " + op);
+                }
+            } catch (EOFException eof) {
+                // truncated record, worker stopped while writing
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output stream, e.g. socket to the coordinator
+     */
+    public PipeWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+    }
+}
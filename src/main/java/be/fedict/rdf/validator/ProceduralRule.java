@@ -0,0 +1,80 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+/**
+ * Validation rule implemented in Java instead of SPARQL, e.g. for checks that
+ * can be done more efficiently in a single pass using a hash map.
+ * 
+ * A ruleset can refer to a procedural rule using a text file with a title
+ * comment and a line "@java" followed by the name of the implementing class, 
+ * which must have a public constructor without arguments.
+ * The rest of the file is only shown in the report, e.g. the equivalent 
+ * SPARQL query.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public interface ProceduralRule {
+    /**
+     * Get the names of the columns of the violations
+     * 
+     * @return list of column names
+     */
+    public List<String> getColumns();
+    
+    /**
+     * Get the predicates and classes used by this rule
+     * 
+     * @return footprint
+     */
+    public Footprint getFootprint();
+    
+    /**
+     * Validate the triples in the store
+     * 
+     * @param con RDF triplestore connection
+     * @param violations receives one row per violation
+     */
+    public void validate(RepositoryConnection con, Consumer<List<String>> violations);
+    
+    /**
+     * Validate the triples in the store, optionally keeping state to validate 
+     * the same store again faster after changes (e.g. in watch mode).
+     * By default, the store is simply validated again.
+     * 
+     * @param con RDF triplestore connection
+     * @param violations receives one row per violation
+     * @param incremental true if the same store will be validated again
+     */
+    public default void validate(RepositoryConnection con, 
+                        Consumer<List<String>> violations, boolean incremental) {
+        validate(con, violations);
+    }
+}
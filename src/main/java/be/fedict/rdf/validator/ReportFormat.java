@@ -0,0 +1,243 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Report formats
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public enum ReportFormat {
+    HTML("html", "text/html"),
+    JSONL("jsonl", "application/x-ndjson"),
+    CSV("csv", "text/csv"),
+    SARIF("sarif", "application/sarif+json");
+    
+    private final String ext;
+    private final String mimeType;
+    
+    /**
+     * Get the file extension, also used as name of the format
+     * 
+     * @return extension without dot
+     */
+    public String getExtension() {
+        return ext;
+    }
+    
+    /**
+     * Get the MIME type
+     * 
+     * @return MIME type
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+    
+    /**
+     * Create a writer for a file
+     * 
+     * @param path output file, compressed if the name ends with .gz
+     * @return result writer
+     */
+    public SimpleResultWriter create(Path path) {
+        switch (this) {
+            case JSONL: return new JsonLinesWriter(path);
+            case CSV: return new CsvWriter(path);
+            case SARIF: return new SarifWriter(path);
+            default: return new HtmlWriter(path);
+        }
+    }
+    
+    /**
+     * Create a writer for a file, limiting the number of rows per table in an
+     * HTML report
+     * 
+     * @param path output file, compressed if the name ends with .gz
+     * @param maxRows maximum number of rows per table, 0 for no maximum
+     * @return result writer
+     */
+    public SimpleResultWriter create(Path path, int maxRows) {
+        SimpleResultWriter w = create(path);
+        if (w instanceof HtmlWriter) {
+            ((HtmlWriter) w).setMaxRows(maxRows);
+        }
+        return w;
+    }
+    
+    /**
+     * Create a writer for an output writer
+     * 
+     * @param out output writer, will be closed at the end
+     * @return result writer
+     */
+    public SimpleResultWriter create(Writer out) {
+        switch (this) {
+            case JSONL: return new JsonLinesWriter(out);
+            case CSV: return new CsvWriter(out);
+            case SARIF: return new SarifWriter(out);
+            default: return new HtmlWriter(out);
+        }
+    }
+    
+    /**
+     * Get a format by name (file extension)
+     * 
+     * @param name name
+     * @return format or null if unknown
+     */
+    public static ReportFormat fromName(String name) {
+        for (ReportFormat fmt: values()) {
+            if (fmt.ext.equalsIgnoreCase(name.strip())) {
+                return fmt;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Get a format by MIME type
+     * 
+     * @param mimeType MIME type, parameters are ignored
+     * @return format or null if unknown
+     */
+    public static ReportFormat fromMimeType(String mimeType) {
+        String type = mimeType.split(";")[0].strip();
+        for (ReportFormat fmt: values()) {
+            if (fmt.mimeType.equalsIgnoreCase(type)) {
+                return fmt;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Remove the .gz extension, if any
+     * 
+     * @param name file name
+     * @return file name without .gz
+     */
+    private static String stripGzip(String name) {
+        return name.endsWith(RowWriter.GZIP) 
+                ? name.substring(0, name.length() - RowWriter.GZIP.length()) : name;
+    }
+    
+    /**
+     * Get the format from the extension of a file, ignoring .gz
+     * 
+     * @param path file
+     * @return format or null if unknown
+     */
+    public static ReportFormat fromPath(Path path) {
+        String name = stripGzip(path.getFileName().toString());
+        int dot = name.lastIndexOf('.');
+        return (dot > 0) ? fromName(name.substring(dot + 1)) : null;
+    }
+    
+    /**
+     * Get the output files for one or more formats.
+     * For multiple formats, the extension of the output file is replaced by
+     * the extension of each format, e.g. report.html and report.jsonl.
+     * All files are compressed if the output file name ends with .gz.
+     * 
+     * @param path output file
+     * @param formats formats
+     * @return output file of each format
+     */
+    public static List<Path> getPaths(Path path, List<ReportFormat> formats) {
+        if (formats.size() == 1 && formats.get(0) == fromPath(path)) {
+            return List.of(path);
+        }
+        String file = path.getFileName().toString();
+        String gz = file.endsWith(RowWriter.GZIP) ? RowWriter.GZIP : "";
+        String base = stripGzip(file);
+        if (fromPath(path) != null) {
+            base = base.substring(0, base.lastIndexOf('.'));
+        }
+        
+        List<Path> paths = new ArrayList<>();
+        for (ReportFormat fmt: formats) {
+            paths.add(path.resolveSibling(base + "." + fmt.ext + gz));
+        }
+        return paths;
+    }
+    
+    /**
+     * Create a writer for one or more formats, see getPaths for the names
+     * of the output files.
+     * 
+     * @param path output file
+     * @param formats formats
+     * @param maxRows maximum number of rows per table in an HTML report
+     * @return result writer
+     */
+    public static SimpleResultWriter create(Path path, List<ReportFormat> formats, 
+                                                                    int maxRows) {
+        List<Path> paths = getPaths(path, formats);
+        List<SimpleResultWriter> writers = new ArrayList<>();
+        for (int i = 0; i < formats.size(); i++) {
+            writers.add(formats.get(i).create(paths.get(i), maxRows));
+        }
+        return (writers.size() == 1) ? writers.get(0) : new MultiWriter(writers);
+    }
+    
+    /**
+     * Parse a list of format names
+     * 
+     * @param names names
+     * @return list of formats
+     * @throws IOException if a format is unknown
+     */
+    public static List<ReportFormat> parse(String[] names) throws IOException {
+        List<ReportFormat> formats = new ArrayList<>();
+        for (String name: names) {
+            ReportFormat fmt = fromName(name);
+            if (fmt == null) {
+                throw new IOException("Unknown report format " + name);
+            }
+            if (!formats.contains(fmt)) {
+                formats.add(fmt);
+            }
+        }
+        return formats;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param ext file extension
+     * @param mimeType MIME type
+     */
+    ReportFormat(String ext, String mimeType) {
+        this.ext = ext;
+        this.mimeType = mimeType;
+    }
+}
@@ -0,0 +1,132 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result writer keeping everything in memory, so it can be replayed later on
+ * another result writer.
+ *
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ResultBuffer implements SimpleResultWriter {
+
+    /**
+     * One recorded call on a writer
+     */
+    private interface Call {
+        public void apply(SimpleResultWriter w) throws IOException;
+    }
+
+    private final List<Call> calls = new ArrayList<>();
+
+    @Override
+    public void start() {
+        calls.add(w -> w.start());
+    }
+
+    @Override
+    public void end() {
+        calls.add(w -> w.end());
+    }
+
+    @Override
+    public void title(String title) {
+        calls.add(w -> w.title(title));
+    }
+
+    @Override
+    public void startSection(String title) {
+        calls.add(w -> w.startSection(title));
+    }
+
+    @Override
+    public void endSection() {
+        calls.add(w -> w.endSection());
+    }
+
+    @Override
+    public void text(String text) {
+        calls.add(w -> w.text(text));
+    }
+
+    @Override
+    public void code(String code) {
+        calls.add(w -> w.code(code));
+    }
+
+    @Override
+    public void startTable(String title) {
+        calls.add(w -> w.startTable(title));
+    }
+
+    @Override
+    public void columnNames(List<String> names) {
+        List<String> copy = new ArrayList<>(names);
+        calls.add(w -> w.columnNames(copy));
+    }
+
+    @Override
+    public void row(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        calls.add(w -> w.row(copy));
+    }
+
+    @Override
+    public void endTable() {
+        calls.add(w -> w.endTable());
+    }
+
+    /**
+     * Write the buffered output to another writer, in the same order
+     *
+     * @param w result writer
+     * @throws IOException
+     */
+    public void replay(SimpleResultWriter w) throws IOException {
+        for (Call call: calls) {
+            call.apply(w);
+        }
+    }
+
+    /**
+     * Check if anything was written to the buffer
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return calls.isEmpty();
+    }
+
+    /**
+     * Clear the buffer
+     */
+    public void clear() {
+        calls.clear();
+    }
+}
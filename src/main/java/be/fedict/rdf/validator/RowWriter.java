@@ -0,0 +1,252 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Base class for machine-readable writers, streaming the violations row by 
+ * row without keeping them in memory.
+ * Rows are only considered to be violations inside the section of a rule,
+ * which itself is inside the section of a ruleset.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public abstract class RowWriter implements SimpleResultWriter {
+    public final static String GZIP = ".gz";
+    
+    private final Path path;
+    protected Writer out;
+    
+    private int depth = 0;
+    private String ruleset = "";
+    private String rule = "";
+    private String status = "";
+    private List<String> cols = new ArrayList<>();
+    private int rows = 0;
+    private int total = 0;
+    
+    /**
+     * Open a file for writing, compressed when the name ends with .gz
+     * 
+     * @param path file
+     * @return buffered writer
+     * @throws IOException 
+     */
+    public static Writer open(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(GZIP)) {
+            OutputStream os = new GZIPOutputStream(Files.newOutputStream(path));
+            return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedWriter(path);
+    }
+    
+    /**
+     * Quote and escape a string as JSON string
+     * 
+     * @param s string
+     * @return quoted string
+     */
+    public static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+    
+    /**
+     * Write the start of the output
+     * 
+     * @throws IOException 
+     */
+    protected abstract void begin() throws IOException;
+    
+    /**
+     * Write the end of the output
+     * 
+     * @param total total number of violations
+     * @throws IOException 
+     */
+    protected abstract void finish(int total) throws IOException;
+    
+    /**
+     * Write general information, e.g. the name of the validated file
+     * 
+     * @param text text
+     * @throws IOException 
+     */
+    protected abstract void info(String text) throws IOException;
+    
+    /**
+     * Write a violation
+     * 
+     * @param ruleset name of the ruleset
+     * @param rule title of the rule
+     * @param cols column names
+     * @param values values
+     * @throws IOException 
+     */
+    protected abstract void violation(String ruleset, String rule, List<String> cols, 
+                                        List<String> values) throws IOException;
+    
+    /**
+     * Write the result of a rule
+     * 
+     * @param ruleset name of the ruleset
+     * @param rule title of the rule
+     * @param violations number of violations
+     * @param status status text, e.g. "OK" or "Timed out"
+     * @throws IOException 
+     */
+    protected abstract void result(String ruleset, String rule, int violations, 
+                                        String status) throws IOException;
+    
+    @Override
+    public void start() throws IOException {
+        if (path != null) {
+            out = open(path);
+        }
+        begin();
+    }
+    
+    @Override
+    public void end() throws IOException {
+        finish(total);
+        out.close();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+    
+    @Override
+    public void title(String title) throws IOException {
+        // not used
+    }
+    
+    @Override
+    public void startSection(String title) throws IOException {
+        depth++;
+        if (depth == 1) {
+            ruleset = title.strip();
+        } else if (depth == 2) {
+            rule = title.strip();
+            status = "";
+            rows = 0;
+        }
+    }
+    
+    @Override
+    public void endSection() throws IOException {
+        if (depth == 2) {
+            result(ruleset, rule, rows, status);
+        }
+        depth--;
+    }
+    
+    @Override
+    public void text(String text) throws IOException {
+        if (depth == 0) {
+            info(text);
+        } else if (depth == 2) {
+            status = text;
+        }
+    }
+    
+    @Override
+    public void code(String code) throws IOException {
+        // not used
+    }
+    
+    @Override
+    public void startTable(String title) throws IOException {
+        cols = new ArrayList<>();
+    }
+    
+    @Override
+    public void columnNames(List<String> names) throws IOException {
+        cols = new ArrayList<>(names);
+    }
+    
+    @Override
+    public void row(List<String> values) throws IOException {
+        if (depth == 2) {
+            rows++;
+            total++;
+            violation(ruleset, rule, cols, values);
+        }
+    }
+    
+    @Override
+    public void endTable() throws IOException {
+        // not used
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param path output file, compressed if the name ends with .gz
+     */
+    protected RowWriter(Path path) {
+        this.path = path;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output writer, will be closed at the end
+     */
+    protected RowWriter(Writer out) {
+        this.path = null;
+        this.out = out;
+    }
+}
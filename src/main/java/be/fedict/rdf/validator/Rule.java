@@ -0,0 +1,306 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.parser.ParsedTupleQuery;
+import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailTupleQuery;
+import org.eclipse.rdf4j.rio.Rio;
+
+/**
+ * Validation rule, a SPARQL SELECT query returning violations.
+ * The query is only parsed once, and can be reused on multiple connections.
+ * Alternatively, the rule can be implemented in Java.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Rule {
+    public final static String JAVA = "@java";
+    public final static String TIMEOUT = "timeout:";
+    public final static String SCOPE = "scope:";
+    public final static String SCOPE_DATASET = "dataset";
+    
+    private final String name;
+    private final String query;
+    private final String title;
+    private final ProceduralRule procedural;
+    private final int timeout;
+    private final boolean datasetScope;
+    private ParsedTupleQuery parsed;
+    private Footprint footprint;
+    private volatile long cost = -1;
+    
+    /**
+     * Get the first line comment of the query
+     * 
+     * @param str
+     * @return comment or empty string
+     */
+    private static String getComment(String str) {
+        if (str.startsWith("#")) {
+            int eol = str.replaceAll("\r", "\n").indexOf("\n");
+            if (eol > 1) {
+                return str.substring(1, eol);
+            }
+        }
+        return "";
+    }
+    
+    /**
+     * Get the value of a "# key: value" comment line
+     * 
+     * @param str rule text
+     * @param key key, including the colon
+     * @return value or null if not set
+     */
+    private static String getSetting(String str, String key) {
+        for (String line: str.split("\\R")) {
+            line = line.strip();
+            if (!line.startsWith("#")) {
+                continue;
+            }
+            line = line.substring(1).strip();
+            if (line.startsWith(key)) {
+                return line.substring(key.length()).strip();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Get the timeout from a "# timeout: seconds" comment line
+     * 
+     * @param str rule text
+     * @return timeout in seconds or 0
+     */
+    private static int getTimeout(String str) {
+        String val = getSetting(str, TIMEOUT);
+        if (val == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(val);
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Get the name of the Java class implementing the rule, if any
+     * 
+     * @param str rule text
+     * @return class name or null
+     */
+    private static String getClassName(String str) {
+        for (String line: str.split("\\R")) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            return line.startsWith(JAVA) ? line.substring(JAVA.length()).strip() : null;
+        }
+        return null;
+    }
+    
+    /**
+     * Get the name of the rule, usually the file name
+     * 
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Get the title, i.e. the comment on the first line of the query
+     * 
+     * @return title or empty string
+     */
+    public String getTitle() {
+        return title;
+    }
+    
+    /**
+     * Get SPARQL query string
+     * 
+     * @return query
+     */
+    public String getQuery() {
+        return query;
+    }
+    
+    /**
+     * Get the timeout set in the rule file
+     * 
+     * @return timeout in seconds or 0 if not set
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Check if the rule only looks at one dataset at a time, together with
+     * its distributions, contact points etc ("# scope: dataset" comment line)
+     * 
+     * @return true if the rule can be validated per dataset
+     */
+    public boolean isDatasetScoped() {
+        return datasetScope;
+    }
+    
+    /**
+     * Check if the rule is implemented in Java instead of SPARQL
+     * 
+     * @return true if procedural
+     */
+    public boolean isProcedural() {
+        return procedural != null;
+    }
+    
+    /**
+     * Get the Java implementation
+     * 
+     * @return procedural rule or null
+     */
+    public ProceduralRule getProcedural() {
+        return procedural;
+    }
+    
+    /**
+     * Get the measured evaluation time of the last validation of this rule
+     * 
+     * @return time in nanoseconds, or -1 if the rule was not validated yet
+     */
+    public long getCost() {
+        return cost;
+    }
+    
+    /**
+     * Set the measured evaluation time, used to validate cheap rules first
+     * 
+     * @param cost time in nanoseconds
+     */
+    public void setCost(long cost) {
+        this.cost = cost;
+    }
+    
+    /**
+     * Get the parsed query, parsing it the first time
+     * 
+     * @return parsed query
+     */
+    public synchronized ParsedTupleQuery getParsedQuery() {
+        if (parsed == null) {
+            parsed = QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL, query, null);
+        }
+        return parsed;
+    }
+    
+    /**
+     * Get the predicates and classes this rule can observe
+     * 
+     * @return footprint
+     */
+    public synchronized Footprint getFootprint() {
+        if (footprint == null) {
+            footprint = Footprint.of(this);
+        }
+        return footprint;
+    }
+    
+    /**
+     * Prepare the query on a connection, without parsing it again
+     * 
+     * @param con RDF triplestore connection
+     * @return tuple query
+     */
+    public TupleQuery prepare(RepositoryConnection con) {
+        if (con instanceof SailRepositoryConnection) {
+            return new SailTupleQuery(getParsedQuery(), (SailRepositoryConnection) con);
+        }
+        return con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param name name of the rule
+     * @param query SPARQL query
+     */
+    public Rule(String name, String query) {
+        this(name, query, null);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param name name of the rule
+     * @param text rule text, shown in the report
+     * @param procedural Java implementation or null
+     */
+    public Rule(String name, String text, ProceduralRule procedural) {
+        this.name = name;
+        this.query = text;
+        String comment = getComment(text);
+        this.title = (comment.isEmpty() && procedural instanceof ShaclRule) 
+                                            ? "SHACL shapes " + name : comment;
+        this.procedural = procedural;
+        this.timeout = getTimeout(text);
+        this.datasetScope = SCOPE_DATASET.equalsIgnoreCase(getSetting(text, SCOPE));
+    }
+    
+    /**
+     * Create a rule from the contents of a rule file, which is either a
+     * SPARQL query, a reference to a Java class or SHACL shapes (a file with
+     * an RDF extension, e.g. .ttl)
+     * 
+     * @param name name of the rule
+     * @param text contents of the rule file
+     * @return rule
+     * @throws IOException when the Java class could not be loaded
+     */
+    public static Rule read(String name, String text) throws IOException {
+        if (Rio.getParserFormatForFileName(name).isPresent()) {
+            return new Rule(name, text, ShaclRule.create(name, text));
+        }
+        String cl = getClassName(text);
+        if (cl == null) {
+            return new Rule(name, text);
+        }
+        try {
+            ProceduralRule impl = Class.forName(cl).asSubclass(ProceduralRule.class)
+                                                .getDeclaredConstructor().newInstance();
+            return new Rule(name, text, impl);
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IOException("Could not load rule class " + cl, ex);
+        }
+    }
+}
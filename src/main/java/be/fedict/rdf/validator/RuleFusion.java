@@ -0,0 +1,284 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.algebra.Exists;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Not;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluate rules checking for a missing property of a class together, e.g.
+ * catalogs missing a title, a description, a publisher...
+ * 
+ *     SELECT ?x WHERE { ?x a C FILTER NOT EXISTS { ?x p ?v } }
+ * 
+ * Instead of scanning the instances of the class once per rule, the instances
+ * are scanned once per group of rules, looking up the predicates of each 
+ * instance only once.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RuleFusion {
+    private final static Logger LOG = LoggerFactory.getLogger(RuleFusion.class);
+    
+    /**
+     * Rule checking for a missing property
+     */
+    private static class Missing {
+        private final IRI cls;
+        private final IRI pred;
+        private final String col;
+        
+        public Missing(IRI cls, IRI pred, String col) {
+            this.cls = cls;
+            this.pred = pred;
+            this.col = col;
+        }
+    }
+    
+    private final Map<Rule,Missing> rules = new HashMap<>();
+    private final Map<IRI,List<Rule>> groups = new HashMap<>();
+    // violations per rule not taken yet, per store and class
+    private final Map<Repository,Map<IRI,Map<Rule,List<List<String>>>>> results = 
+                                                                    new HashMap<>();
+    
+    /**
+     * Get the constant IRI of a variable
+     * 
+     * @param v variable
+     * @return IRI or null
+     */
+    private static IRI getIRI(Var v) {
+        Value val = v.getValue();
+        return (val instanceof IRI) ? (IRI) val : null;
+    }
+    
+    /**
+     * Check if the query of a rule only checks for a missing property of
+     * the instances of a class.
+     * Rules with their own timeout are not fused, since a scan cannot be 
+     * interrupted.
+     * 
+     * @param rule rule
+     * @return missing property or null
+     */
+    private static Missing match(Rule rule) {
+        if (rule.isProcedural() || rule.getTimeout() > 0) {
+            return null;
+        }
+        TupleExpr expr = rule.getParsedQuery().getTupleExpr();
+        if (expr instanceof QueryRoot) {
+            expr = ((QueryRoot) expr).getArg();
+        }
+        if (!(expr instanceof Projection)) {
+            return null;
+        }
+        Projection proj = (Projection) expr;
+        List<ProjectionElem> elems = proj.getProjectionElemList().getElements();
+        if (elems.size() != 1 || !(proj.getArg() instanceof Filter)) {
+            return null;
+        }
+        Filter filter = (Filter) proj.getArg();
+        if (!(filter.getArg() instanceof StatementPattern) 
+                || !(filter.getCondition() instanceof Not)
+                || !(((Not) filter.getCondition()).getArg() instanceof Exists)) {
+            return null;
+        }
+        TupleExpr sub = ((Exists) ((Not) filter.getCondition()).getArg()).getSubQuery();
+        if (!(sub instanceof StatementPattern)) {
+            return null;
+        }
+        StatementPattern type = (StatementPattern) filter.getArg();
+        StatementPattern prop = (StatementPattern) sub;
+        
+        Var subj = type.getSubjectVar();
+        if (subj.hasValue() || type.getContextVar() != null || prop.getContextVar() != null
+                || !RDF.TYPE.equals(type.getPredicateVar().getValue())
+                || getIRI(type.getObjectVar()) == null
+                || !subj.getName().equals(prop.getSubjectVar().getName())
+                || getIRI(prop.getPredicateVar()) == null
+                || prop.getObjectVar().hasValue()
+                || prop.getObjectVar().getName().equals(subj.getName())
+                || !elems.get(0).getSourceName().equals(subj.getName())) {
+            return null;
+        }
+        return new Missing(getIRI(type.getObjectVar()), getIRI(prop.getPredicateVar()),
+                            elems.get(0).getTargetName());
+    }
+    
+    /**
+     * Check if a rule is evaluated as part of a group
+     * 
+     * @param rule rule
+     * @return true if part of a group
+     */
+    public boolean covers(Rule rule) {
+        return rules.containsKey(rule);
+    }
+    
+    /**
+     * Get the column names of a rule in a group
+     * 
+     * @param rule rule
+     * @return column names
+     */
+    public List<String> getColumns(Rule rule) {
+        return List.of(rules.get(rule).col);
+    }
+    
+    /**
+     * Scan the instances of a class once, checking the missing properties of
+     * all rules in the group.
+     * 
+     * @param con RDF triplestore connection
+     * @param cls class
+     * @return violations per rule
+     */
+    private Map<Rule,List<List<String>>> scan(RepositoryConnection con, IRI cls) {
+        List<Rule> group = groups.get(cls);
+        Map<Rule,List<List<String>>> rows = new HashMap<>();
+        for (Rule rule: group) {
+            rows.put(rule, new ArrayList<>());
+        }
+        Map<Resource,Set<IRI>> seen = new HashMap<>();
+        
+        try (RepositoryResult<Statement> res = con.getStatements(null, RDF.TYPE, cls)) {
+            for (Statement st: res) {
+                Resource subj = st.getSubject();
+                Set<IRI> preds = seen.computeIfAbsent(subj, s -> {
+                    Set<IRI> p = new HashSet<>();
+                    try (RepositoryResult<Statement> props = con.getStatements(s, null, null)) {
+                        for (Statement prop: props) {
+                            p.add(prop.getPredicate());
+                        }
+                    }
+                    return p;
+                });
+                for (Rule rule: group) {
+                    if (!preds.contains(rules.get(rule).pred)) {
+                        rows.get(rule).add(List.of(subj.stringValue()));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+    
+    /**
+     * Get the violations of a rule, scanning the instances of the class for 
+     * all rules of its group the first time a rule of the group is validated 
+     * on a store.
+     * The violations are only kept until each rule of the group took them.
+     * 
+     * @param con RDF triplestore connection
+     * @param rule rule
+     * @return violations
+     */
+    public synchronized List<List<String>> getRows(RepositoryConnection con, Rule rule) {
+        IRI cls = rules.get(rule).cls;
+        Repository repo = con.getRepository();
+        Map<IRI,Map<Rule,List<List<String>>>> byClass = 
+                                results.computeIfAbsent(repo, r -> new HashMap<>());
+        Map<Rule,List<List<String>>> rows = byClass.get(cls);
+        if (rows == null || !rows.containsKey(rule)) {
+            rows = scan(con, cls);
+            byClass.put(cls, rows);
+        }
+        List<List<String>> taken = rows.remove(rule);
+        if (rows.isEmpty()) {
+            byClass.remove(cls);
+            if (byClass.isEmpty()) {
+                results.remove(repo);
+            }
+        }
+        return taken;
+    }
+    
+    /**
+     * Remove the violations not taken yet of a store, e.g. when a rule of a
+     * group was not validated on a temporary store.
+     * 
+     * @param repo repository
+     */
+    public synchronized void release(Repository repo) {
+        results.remove(repo);
+    }
+    
+    /**
+     * Find the groups of rules checking missing properties of the same class
+     * 
+     * @param rulesets rulesets
+     * @return rule fusion, possibly without groups
+     */
+    public static RuleFusion of(List<Ruleset> rulesets) {
+        RuleFusion fusion = new RuleFusion();
+        Map<Rule,Missing> candidates = new HashMap<>();
+        Map<IRI,List<Rule>> byClass = new HashMap<>();
+        for (Ruleset ruleset: rulesets) {
+            for (Rule rule: ruleset.getRules()) {
+                Missing m = match(rule);
+                if (m != null) {
+                    candidates.put(rule, m);
+                    byClass.computeIfAbsent(m.cls, c -> new ArrayList<>()).add(rule);
+                }
+            }
+        }
+        for (Map.Entry<IRI,List<Rule>> e: byClass.entrySet()) {
+            if (e.getValue().size() > 1) {
+                fusion.groups.put(e.getKey(), e.getValue());
+                for (Rule rule: e.getValue()) {
+                    fusion.rules.put(rule, candidates.get(rule));
+                }
+                LOG.debug("Validating {} rules on {} in one scan", 
+                                                e.getValue().size(), e.getKey());
+            }
+        }
+        return fusion;
+    }
+}
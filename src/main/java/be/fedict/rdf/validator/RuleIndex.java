@@ -0,0 +1,188 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the built-in rulesets, generated when building the jar.
+ * All built-in rules can then be read with a single resource read, instead
+ * of opening the jar as a file system and listing the directories.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RuleIndex {
+    public final static String INDEX = "/builtin-rules.idx";
+    
+    private static Map<String,List<String[]>> index;
+    
+    /**
+     * Write a string
+     * 
+     * @param out output stream
+     * @param s string
+     * @throws IOException 
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+    
+    /**
+     * Read a string
+     * 
+     * @param in input stream
+     * @return string
+     * @throws IOException 
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * List the files or directories in a directory, sorted by name
+     * 
+     * @param dir directory
+     * @param dirs true for directories, false for files
+     * @return list of paths
+     * @throws IOException 
+     */
+    private static List<Path> list(Path dir, boolean dirs) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> Files.isDirectory(p) == dirs)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * Write the index of all rulesets in a directory, one ruleset per 
+     * subdirectory.
+     * 
+     * @param dir directory with rulesets
+     * @param file index file
+     * @throws IOException 
+     */
+    public static void write(Path dir, Path file) throws IOException {
+        List<Path> sets = list(dir, true);
+        try (DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(sets.size());
+            for (Path set: sets) {
+                List<Path> rules = list(set, false);
+                writeString(out, set.getFileName().toString());
+                out.writeInt(rules.size());
+                for (Path rule: rules) {
+                    writeString(out, rule.getFileName().toString());
+                    writeString(out, Files.readString(rule));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Read the index from the classpath, only once
+     * 
+     * @return map of ruleset names and rules (file name and text), empty if 
+     * there is no index
+     * @throws IOException 
+     */
+    private static synchronized Map<String,List<String[]>> read() throws IOException {
+        if (index != null) {
+            return index;
+        }
+        Map<String,List<String[]>> sets = new HashMap<>();
+        InputStream is = RuleIndex.class.getResourceAsStream(INDEX);
+        if (is != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    String name = readString(in);
+                    int nrules = in.readInt();
+                    List<String[]> rules = new ArrayList<>(nrules);
+                    for (int j = 0; j < nrules; j++) {
+                        rules.add(new String[] { readString(in), readString(in) });
+                    }
+                    sets.put(name, rules);
+                }
+            }
+        }
+        index = sets;
+        return index;
+    }
+    
+    /**
+     * Get the rules of a built-in ruleset from the index.
+     * 
+     * @param name name of the built-in ruleset, without builtin://
+     * @return list of rules, or null if the ruleset is not in the index
+     * @throws IOException 
+     */
+    public static List<Rule> getRules(String name) throws IOException {
+        List<String[]> texts = read().get(name);
+        if (texts == null) {
+            return null;
+        }
+        List<Rule> rules = new ArrayList<>(texts.size());
+        for (String[] text: texts) {
+            rules.add(Rule.read(text[0], text[1]));
+        }
+        return rules;
+    }
+    
+    /**
+     * Generate the index, used when building the jar
+     * 
+     * @param args directory with the rulesets and index file
+     * @throws IOException 
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: RuleIndex <rulesets directory> <index file>");
+            System.exit(-1);
+        }
+        write(Paths.get(args[0]), Paths.get(args[1]));
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+/**
+ * Execution metrics of a single rule.
+ * Times are in nanoseconds, -1 means not available.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class RuleMetrics {
+    private final Rule rule;
+    private final long prepare;
+    private final long eval;
+    private final long firstRow;
+    private final int rows;
+    private final long allocated;
+    
+    /**
+     * Get the rule
+     * 
+     * @return rule
+     */
+    public Rule getRule() {
+        return rule;
+    }
+    
+    /**
+     * Get the time needed to prepare the query
+     * 
+     * @return nanoseconds
+     */
+    public long getPrepare() {
+        return prepare;
+    }
+    
+    /**
+     * Get the time needed to evaluate the query and to process all rows
+     * 
+     * @return nanoseconds
+     */
+    public long getEval() {
+        return eval;
+    }
+    
+    /**
+     * Get the total time
+     * 
+     * @return nanoseconds
+     */
+    public long getTotal() {
+        return prepare + eval;
+    }
+    
+    /**
+     * Get the time until the first row was returned
+     * 
+     * @return nanoseconds or -1 if there were no rows
+     */
+    public long getFirstRow() {
+        return firstRow;
+    }
+    
+    /**
+     * Get the number of rows, i.e. violations
+     * 
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Get the number of bytes allocated by the validating thread
+     * 
+     * @return bytes or -1 if not supported by the JVM
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+    
+    /**
+     * Combine with the metrics of the same rule validated on another part of
+     * the data, e.g. another graph.
+     * Times, rows and allocated bytes are summed, the time to first row is 
+     * the shortest one.
+     * 
+     * @param other metrics of the same rule
+     * @return combined metrics
+     */
+    public RuleMetrics merge(RuleMetrics other) {
+        long first = (firstRow < 0) ? other.firstRow 
+                        : (other.firstRow < 0) ? firstRow : Math.min(firstRow, other.firstRow);
+        long alloc = (allocated < 0 || other.allocated < 0) ? -1 : allocated + other.allocated;
+        return new RuleMetrics(rule, prepare + other.prepare, eval + other.eval, first,
+                                rows + other.rows, alloc);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param rule rule
+     * @param prepare time to prepare the query
+     * @param eval time to evaluate the query
+     * @param firstRow time to first row or -1
+     * @param rows number of rows
+     * @param allocated allocated bytes or -1
+     */
+    public RuleMetrics(Rule rule, long prepare, long eval, long firstRow, int rows, 
+                                                                long allocated) {
+        this.rule = rule;
+        this.prepare = prepare;
+        this.eval = eval;
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.allocated = allocated;
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of validation rules, read from a directory or from the built-in sets.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Ruleset {
+    private final static Logger LOG = LoggerFactory.getLogger(Ruleset.class);
+    
+    public final static String BUILTIN = "builtin://";
+    
+    private final String name;
+    private final List<Rule> rules;
+    
+    /**
+     * Get the name, i.e. the directory or built-in set
+     * 
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Get the rules
+     * 
+     * @return list of rules
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+    
+    /**
+     * Reads rulesets, opening the file system of the jar only once
+     */
+    private static class Reader implements Closeable {
+        private FileSystem fs;
+
+        /**
+         * Get path from directory or jar
+         * 
+         * @param ruleset
+         * @return
+         * @throws IOException 
+         */
+        private Path getPath(String ruleset) throws IOException {
+            if (ruleset == null || ruleset.isEmpty()) {
+                throw new IOException("Empty or null ruleset");
+            }
+        
+            if (!ruleset.startsWith(BUILTIN)) {
+                LOG.info("Using validation queries from directory {}", ruleset);
+                return Paths.get(ruleset);
+            }
+        
+            String builtin = ruleset.replaceFirst(BUILTIN, "/");
+            LOG.info("Using built-in rulesets {}", builtin);
+                
+            URI uri;
+            try {
+                uri = Ruleset.class.getResource(builtin).toURI();
+            } catch (URISyntaxException ex) {
+                throw new IOException(ex);
+            }
+            if (uri.getScheme().equals("jar")) {
+                if (fs == null) {
+                    try {
+                        fs = FileSystems.getFileSystem(uri);
+                    } catch (FileSystemNotFoundException f) {
+                        fs = FileSystems.newFileSystem(uri, Collections.emptyMap());
+                    }
+                }
+                return fs.getPath(builtin);
+            }
+            return Paths.get(uri);
+        }
+
+        /**
+         * Read the rules (SPARQL queries) of a ruleset.
+         * Built-in rulesets are read from the index, if available.
+         * 
+         * @param ruleset directory or built-in set
+         * @return list of rules
+         * @throws IOException 
+         */
+        private List<Rule> readRules(String ruleset) throws IOException {
+            if (ruleset != null && ruleset.startsWith(BUILTIN)) {
+                List<Rule> indexed = RuleIndex.getRules(ruleset.substring(BUILTIN.length()));
+                if (indexed != null) {
+                    LOG.info("Using built-in rulesets /{}", 
+                                            ruleset.substring(BUILTIN.length()));
+                    return indexed;
+                }
+            }
+            ArrayList<Rule> rules = new ArrayList<>(); 
+       
+            Path pathdir = getPath(ruleset);
+        
+            if (Files.isDirectory(pathdir)) {
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(pathdir)) {
+                    for(Path file: stream) {
+                        files.add(file);
+                    }
+                }
+                // same order as the index of the built-in rulesets
+                files.sort(Comparator.comparing(f -> f.getFileName().toString()));
+                for(Path file: files) {
+                    LOG.debug("Rule {}", file);
+                    rules.add(Rule.read(file.getFileName().toString(), 
+                                                    Files.readString(file)));
+                }
+            } else {
+                LOG.warn("Path {} is not a directory", pathdir);
+            }
+            return rules;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (fs != null) {
+                fs.close();
+            }
+        }
+    }
+    
+    /**
+     * Read one or more rulesets from directories or the built-in sets
+     * 
+     * @param names directories or built-in sets
+     * @return list of rulesets
+     * @throws IOException 
+     */
+    public static List<Ruleset> read(String[] names) throws IOException {
+        List<Ruleset> rulesets = new ArrayList<>();
+        try (Reader reader = new Reader()) {
+            for (String name: names) {
+                rulesets.add(new Ruleset(name, reader.readRules(name)));
+            }
+        }
+        return rulesets;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param name name of the ruleset
+     * @param rules rules
+     */
+    public Ruleset(String name, List<Rule> rules) {
+        this.name = name;
+        this.rules = rules;
+    }
+}
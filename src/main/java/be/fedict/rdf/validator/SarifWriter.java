@@ -0,0 +1,128 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a SARIF 2.1.0 log, e.g. for code scanning dashboards.
+ * The results are streamed, only the list of rules is kept in memory and 
+ * written at the end.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class SarifWriter extends RowWriter {
+    public final static String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    
+    private final Map<String,String> rules = new LinkedHashMap<>();
+    private String sep = "\n";
+    
+    /**
+     * Get the identifier of a rule
+     * 
+     * @param ruleset name of the ruleset
+     * @param rule title of the rule
+     * @return identifier
+     */
+    private static String id(String ruleset, String rule) {
+        return ruleset + "/" + rule;
+    }
+    
+    @Override
+    protected void begin() throws IOException {
+        out.write("{\"version\":\"2.1.0\",\"$schema\":" + quote(SCHEMA) 
+                    + ",\"runs\":[{\"results\":[");
+    }
+    
+    @Override
+    protected void finish(int total) throws IOException {
+        out.write("\n],\"tool\":{\"driver\":{\"name\":\"RDF Validator\",\"rules\":[");
+        String s = "\n";
+        for (Map.Entry<String,String> rule: rules.entrySet()) {
+            out.write(s + "{\"id\":" + quote(rule.getKey()) 
+                    + ",\"shortDescription\":{\"text\":" + quote(rule.getValue()) + "}}");
+            s = ",\n";
+        }
+        out.write("\n]}}}]}\n");
+    }
+    
+    @Override
+    protected void info(String text) throws IOException {
+        // not part of the results
+    }
+    
+    @Override
+    protected void violation(String ruleset, String rule, List<String> cols, 
+                                            List<String> values) throws IOException {
+        String id = id(ruleset, rule);
+        rules.putIfAbsent(id, rule);
+        
+        StringBuilder msg = new StringBuilder(rule);
+        for (int i = 0; i < values.size(); i++) {
+            String col = (i < cols.size()) ? cols.get(i) : String.valueOf(i);
+            msg.append(i == 0 ? ": " : ", ").append(col).append('=').append(values.get(i));
+        }
+        
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(sep).append("{\"ruleId\":").append(quote(id))
+            .append(",\"level\":\"error\",\"message\":{\"text\":")
+            .append(quote(msg.toString())).append('}');
+        if (!values.isEmpty()) {
+            sb.append(",\"locations\":[{\"logicalLocations\":[{\"fullyQualifiedName\":")
+                .append(quote(values.get(0))).append("}]}]");
+        }
+        sb.append('}');
+        out.write(sb.toString());
+        sep = ",\n";
+    }
+    
+    @Override
+    protected void result(String ruleset, String rule, int violations, String status) {
+        rules.putIfAbsent(id(ruleset, rule), rule);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param path output file
+     */
+    public SarifWriter(Path path) {
+        super(path);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param out output writer, will be closed at the end
+     */
+    public SarifWriter(Writer out) {
+        super(out);
+    }
+}
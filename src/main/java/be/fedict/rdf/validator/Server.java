@@ -0,0 +1,308 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.eclipse.rdf4j.common.exception.RDF4JException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-running validation service, accepting RDF uploads over HTTP on 
+ * localhost and returning the report.
+ * The rulesets are only read once, each upload is validated using its own
+ * in-memory store.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Server {
+    private final static Logger LOG = LoggerFactory.getLogger(Server.class);
+    
+    public final static String PATH = "/validate";
+    
+    private final List<Ruleset> rulesets;
+    private final int port;
+    private final int maxRequests;
+    private final int maxQueue;
+    private final Consumer<Validator> options;
+    
+    private final Semaphore running;
+    private final AtomicInteger pending = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService pool;
+    
+    /**
+     * Send a short plain text reply
+     * 
+     * @param ex HTTP exchange
+     * @param code HTTP status code
+     * @param msg message
+     * @throws IOException 
+     */
+    private static void reply(HttpExchange ex, int code, String msg) throws IOException {
+        byte[] b = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        ex.sendResponseHeaders(code, b.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(b);
+        }
+    }
+    
+    /**
+     * Get the parameters from the query string of the request
+     * 
+     * @param query raw query string
+     * @return map of parameters
+     */
+    private static Map<String,String> getParams(String query) {
+        Map<String,String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String param: query.split("&")) {
+            String[] kv = param.split("=", 2);
+            params.put(URLDecoder.decode(kv[0], StandardCharsets.UTF_8), 
+                kv.length > 1 ? URLDecoder.decode(kv[1], StandardCharsets.UTF_8) : "");
+        }
+        return params;
+    }
+    
+    /**
+     * Get the RDF format of the upload, from the "format" parameter (file
+     * extension) or the content type.
+     * 
+     * @param ex HTTP exchange
+     * @param params parameters
+     * @return RDF format or null
+     */
+    private static RDFFormat getInputFormat(HttpExchange ex, Map<String,String> params) {
+        String ext = params.get("format");
+        if (ext != null) {
+            return Rio.getParserFormatForFileName("upload." + ext).orElse(null);
+        }
+        String type = ex.getRequestHeaders().getFirst("Content-Type");
+        if (type == null) {
+            return null;
+        }
+        Optional<RDFFormat> fmt = Rio.getParserFormatForMIMEType(type.split(";")[0].trim());
+        return fmt.orElse(null);
+    }
+    
+    /**
+     * Get the type of report, from the "report" parameter or the Accept header.
+     * 
+     * @param ex HTTP exchange
+     * @param params parameters
+     * @return report type or null if not supported
+     */
+    private static ReportFormat getReportType(HttpExchange ex, Map<String,String> params) {
+        String type = params.get("report");
+        if (type != null) {
+            return ReportFormat.fromName(type);
+        }
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        if (accept == null) {
+            return ReportFormat.HTML;
+        }
+        for (String mime: accept.split(",")) {
+            ReportFormat fmt = ReportFormat.fromMimeType(mime);
+            if (fmt != null) {
+                return fmt;
+            }
+        }
+        return accept.contains("*/*") ? ReportFormat.HTML : null;
+    }
+    
+    /**
+     * Validate the upload and send the report back to the client.
+     * The report is only sent when the validation succeeded, so a client 
+     * never receives a truncated report with status 200.
+     * 
+     * @param ex HTTP exchange
+     * @param fmt RDF format of the upload
+     * @param type report type
+     * @throws IOException 
+     */
+    private void validate(HttpExchange ex, RDFFormat fmt, ReportFormat type) 
+                                                            throws IOException {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Writer out = new BufferedWriter(new OutputStreamWriter(report, StandardCharsets.UTF_8));
+        SimpleResultWriter sw = type.create(out);
+        
+        Validator validator = new Validator(ex.getRequestBody(), fmt, "upload", sw);
+        options.accept(validator);
+        try {
+            long start = System.currentTimeMillis();
+            try {
+                validator.init();
+            } catch (IOException | RDF4JException e) {
+                LOG.warn("Could not load upload {}", e.getMessage());
+                reply(ex, 400, "Could not load RDF: " + e.getMessage());
+                return;
+            }
+            if (validator.size() == 0) {
+                LOG.warn("Upload without triples");
+                reply(ex, 400, "No triples in upload");
+                return;
+            }
+            try {
+                int violations = validator.validate(rulesets);
+                sw.close();
+                LOG.info("Validated upload in {} ms, {} violations", 
+                        System.currentTimeMillis() - start, violations);
+            } catch (IOException | RDF4JException e) {
+                LOG.error("Validation of upload failed {}", e.getMessage());
+                reply(ex, 500, "Validation failed: " + e.getMessage());
+                return;
+            }
+        } finally {
+            validator.close();
+        }
+        ex.getResponseHeaders().set("Content-Type", type.getMimeType() + "; charset=UTF-8");
+        ex.sendResponseHeaders(200, report.size());
+        try (OutputStream body = ex.getResponseBody()) {
+            report.writeTo(body);
+        }
+    }
+    
+    /**
+     * Handle a request, making sure the limits are respected
+     * 
+     * @param ex HTTP exchange
+     * @throws IOException 
+     */
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!ex.getRequestMethod().equals("POST")) {
+                reply(ex, 405, "Use POST to upload RDF to " + PATH);
+                return;
+            }
+            Map<String,String> params = getParams(ex.getRequestURI().getRawQuery());
+            RDFFormat fmt = getInputFormat(ex, params);
+            if (fmt == null) {
+                reply(ex, 415, "Unknown RDF format, use Content-Type or format parameter");
+                return;
+            }
+            ReportFormat type = getReportType(ex, params);
+            if (type == null) {
+                reply(ex, 406, "Unsupported report type");
+                return;
+            }
+            
+            if (pending.incrementAndGet() > maxRequests + maxQueue) {
+                pending.decrementAndGet();
+                LOG.warn("Too many requests, rejecting");
+                ex.getResponseHeaders().set("Retry-After", "1");
+                reply(ex, 503, "Too many requests");
+                return;
+            }
+            try {
+                running.acquire();
+                try {
+                    validate(ex, fmt, type);
+                } finally {
+                    running.release();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pending.decrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Request failed", e);
+        } finally {
+            ex.close();
+        }
+    }
+    
+    /**
+     * Start the service
+     * 
+     * @throws IOException 
+     */
+    public void start() throws IOException {
+        InetSocketAddress addr = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        server = HttpServer.create(addr, maxQueue);
+        server.createContext(PATH, this::handle);
+        pool = Executors.newCachedThreadPool();
+        server.setExecutor(pool);
+        server.start();
+        LOG.info("Listening on http://{}:{}{}", addr.getHostString(), port, PATH);
+    }
+    
+    /**
+     * Stop the service
+     */
+    public void stop() {
+        server.stop(1);
+        pool.shutdownNow();
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param rulesets rulesets, already read
+     * @param port TCP port on localhost
+     * @param maxRequests maximum number of validations running at the same time
+     * @param maxQueue maximum number of validations waiting
+     * @param options sets the options of each validator
+     */
+    public Server(List<Ruleset> rulesets, int port, int maxRequests, int maxQueue,
+                                                Consumer<Validator> options) {
+        this.rulesets = rulesets;
+        this.port = port;
+        this.maxRequests = maxRequests;
+        this.maxQueue = maxQueue;
+        this.options = options;
+        this.running = new Semaphore(maxRequests, true);
+    }
+}
@@ -0,0 +1,308 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.RDF4J;
+import org.eclipse.rdf4j.model.vocabulary.SHACL;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.shacl.ShaclSail;
+import org.eclipse.rdf4j.sail.shacl.ShaclSail.TransactionSettings.ValidationApproach;
+import org.eclipse.rdf4j.sail.shacl.ShaclSailValidationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rule validating SHACL shapes, using the SHACL engine of RDF4J.
+ * A ruleset can contain SHACL shapes files (e.g. .ttl), each file is one rule.
+ * 
+ * The triples are copied to a store with the shapes, which is discarded after
+ * the validation.
+ * When validating incrementally (e.g. in watch mode), the rule keeps the copy 
+ * of the last store it validated, and only the added and removed triples 
+ * are applied to it. When the previous triples conformed to the shapes, 
+ * the SHACL engine only validates the focus nodes affected by these changes, 
+ * otherwise all triples are validated again.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ShaclRule implements ProceduralRule {
+    private final static Logger LOG = LoggerFactory.getLogger(ShaclRule.class);
+    
+    private final static List<String> COLUMNS = 
+                        List.of("focus", "path", "value", "constraint", "severity");
+    
+    // validated triples are in the default graph, the shapes in their own graph
+    private final static Resource DATA = null;
+    
+    private final Model shapes;
+    
+    // copy kept for incremental validation, and the store it is a copy of
+    private Shapes kept;
+    private Repository source;
+    
+    /**
+     * Store with the shapes and a copy of the validated triples
+     */
+    private class Shapes {
+        private final Repository repo;
+        private boolean conforms = false;
+        private List<List<String>> rows = List.of();
+        
+        /**
+         * Create the store with the shapes
+         */
+        private Shapes() {
+            repo = new SailRepository(new ShaclSail(new MemoryStore()));
+            try (RepositoryConnection con = repo.getConnection()) {
+                con.begin();
+                con.add(shapes, RDF4J.SHACL_SHAPE_GRAPH);
+                con.commit();
+            }
+        }
+        
+        /**
+         * Apply the differences with the store to validate and validate them.
+         * The changes are validated incrementally when the previous triples 
+         * conformed, otherwise all triples are validated.
+         * 
+         * @param con connection to the store to validate
+         */
+        private void update(RepositoryConnection con) {
+            try (RepositoryConnection sc = repo.getConnection()) {
+                List<Statement> added = new ArrayList<>();
+                List<Statement> removed = new ArrayList<>();
+                try (RepositoryResult<Statement> res = con.getStatements(null, null, null, false)) {
+                    for (Statement st: res) {
+                        if (!sc.hasStatement(st.getSubject(), st.getPredicate(), 
+                                                    st.getObject(), false, DATA)) {
+                            added.add(sc.getValueFactory().createStatement(
+                                    st.getSubject(), st.getPredicate(), st.getObject()));
+                        }
+                    }
+                }
+                try (RepositoryResult<Statement> res = sc.getStatements(null, null, null, false, DATA)) {
+                    for (Statement st: res) {
+                        if (!con.hasStatement(st.getSubject(), st.getPredicate(), 
+                                                    st.getObject(), false)) {
+                            removed.add(st);
+                        }
+                    }
+                }
+                LOG.info("SHACL: {} triples added, {} removed", added.size(), removed.size());
+                if (added.isEmpty() && removed.isEmpty()) {
+                    return;
+                }
+                
+                try {
+                    apply(sc, added, removed, conforms ? ValidationApproach.Auto 
+                                                        : ValidationApproach.Bulk);
+                    rows = List.of();
+                    conforms = true;
+                } catch (RepositoryException e) {
+                    ShaclSailValidationException ve = getValidation(e);
+                    if (ve == null) {
+                        throw e;
+                    }
+                    apply(sc, added, removed, ValidationApproach.Disabled);
+                    rows = toRows(ve.validationReportAsModel());
+                    conforms = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the string value of the object of a result property
+     * 
+     * @param m report as model
+     * @param result validation result
+     * @param pred property
+     * @return string or empty string
+     */
+    private static String get(Model m, Resource result, IRI pred) {
+        return Models.object(m.filter(result, pred, null))
+                        .map(Value::stringValue).orElse("");
+    }
+    
+    /**
+     * Get the local name of the object of a result property
+     * 
+     * @param m report as model
+     * @param result validation result
+     * @param pred property
+     * @return local name or empty string
+     */
+    private static String getLocalName(Model m, Resource result, IRI pred) {
+        return Models.objectIRI(m.filter(result, pred, null))
+                        .map(IRI::getLocalName).orElse("");
+    }
+    
+    /**
+     * Convert a SHACL validation report to violations, sorted by focus node
+     * 
+     * @param m validation report as model
+     * @return list of violations
+     */
+    private static List<List<String>> toRows(Model m) {
+        List<List<String>> res = new ArrayList<>();
+        for (Resource result: m.filter(null, SHACL.RESULT, null).objects()
+                                .stream().map(Resource.class::cast).toArray(Resource[]::new)) {
+            res.add(List.of(get(m, result, SHACL.FOCUS_NODE),
+                            get(m, result, SHACL.RESULT_PATH),
+                            get(m, result, SHACL.VALUE),
+                            getLocalName(m, result, SHACL.SOURCE_CONSTRAINT_COMPONENT),
+                            getLocalName(m, result, SHACL.RESULT_SEVERITY)));
+        }
+        res.sort(Comparator.comparing((List<String> r) -> r.get(0))
+                            .thenComparing(r -> r.get(1))
+                            .thenComparing(r -> r.get(2)));
+        return res;
+    }
+    
+    /**
+     * Get the SHACL validation exception causing a failed commit, if any
+     * 
+     * @param e exception
+     * @return SHACL exception or null
+     */
+    private static ShaclSailValidationException getValidation(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ShaclSailValidationException) {
+                return (ShaclSailValidationException) t;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Apply changes to the store
+     * 
+     * @param con connection to the store with the shapes
+     * @param added statements to add
+     * @param removed statements to remove
+     * @param approach validation of the changes when committing
+     */
+    private static void apply(RepositoryConnection con, List<Statement> added, 
+                            List<Statement> removed, ValidationApproach approach) {
+        con.begin(approach);
+        try {
+            con.remove(removed);
+            con.add(added);
+            con.commit();
+        } finally {
+            if (con.isActive()) {
+                con.rollback();
+            }
+        }
+    }
+    
+    @Override
+    public List<String> getColumns() {
+        return COLUMNS;
+    }
+    
+    @Override
+    public Footprint getFootprint() {
+        // shapes can use any property, e.g. via sh:targetSubjectsOf
+        return Footprint.all();
+    }
+    
+    @Override
+    public void validate(RepositoryConnection con, Consumer<List<String>> violations) {
+        Shapes copy = new Shapes();
+        try {
+            copy.update(con);
+        } finally {
+            copy.repo.shutDown();
+        }
+        copy.rows.forEach(violations);
+    }
+    
+    @Override
+    public synchronized void validate(RepositoryConnection con, 
+                            Consumer<List<String>> violations, boolean incremental) {
+        if (!incremental) {
+            validate(con, violations);
+            return;
+        }
+        if (kept == null || source != con.getRepository()) {
+            if (kept != null) {
+                kept.repo.shutDown();
+            }
+            kept = new Shapes();
+            source = con.getRepository();
+        }
+        kept.update(con);
+        kept.rows.forEach(violations);
+    }
+    
+    /**
+     * Create a SHACL rule from a shapes file
+     * 
+     * @param name file name, used to determine the RDF format
+     * @param text contents of the file
+     * @return rule
+     * @throws IOException when the shapes could not be parsed
+     */
+    public static ShaclRule create(String name, String text) throws IOException {
+        RDFFormat format = Rio.getParserFormatForFileName(name).orElse(RDFFormat.TURTLE);
+        try {
+            return new ShaclRule(Rio.parse(new StringReader(text), "", format));
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Could not parse SHACL shapes " + name, e);
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param shapes SHACL shapes
+     */
+    public ShaclRule(Model shapes) {
+        this.shapes = shapes;
+    }
+}
@@ -48,4 +48,13 @@ public interface SimpleResultWriter {
     public void columnNames(List<String> names) throws IOException;
     public void row(List<String> values) throws IOException;
     public void endTable() throws IOException;
+    
+    /**
+     * Close the output without ending the report, e.g. when the validation
+     * failed. Does nothing when the output was already closed.
+     * 
+     * @throws IOException 
+     */
+    public default void close() throws IOException {
+    }
 }
@@ -0,0 +1,196 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.Rio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parsed input files, stored as binary RDF snapshots which are
+ * much faster to load than text formats.
+ * Snapshots are keyed by a hash of the contents of the input file, 
+ * the least recently used snapshots are removed when the cache grows too big.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class SnapshotCache {
+    private final static Logger LOG = LoggerFactory.getLogger(SnapshotCache.class);
+    
+    public final static String EXT = ".brf";
+    
+    private final Path dir;
+    private final long maxSize;
+    
+    /**
+     * Writes the parsed triples to a snapshot
+     */
+    public interface Loader {
+        /**
+         * Parse the input, passing the triples to the snapshot handler
+         * 
+         * @param snapshot handler writing the snapshot
+         * @throws IOException 
+         */
+        public void load(RDFHandler snapshot) throws IOException;
+    }
+    
+    /**
+     * Calculate the key of an input file: a hash of the format and the contents
+     * 
+     * @param file input file
+     * @param format RDF format or null when not known yet
+     * @return hex string
+     * @throws IOException 
+     */
+    public static String key(Path file, RDFFormat format) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        md.update(((format != null) ? format.getName() : "").getBytes(StandardCharsets.UTF_8));
+        
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream is = Files.newInputStream(file)) {
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                md.update(buf, 0, len);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b: md.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+    
+    /**
+     * Get the snapshot file for a key
+     * 
+     * @param key key
+     * @return path
+     */
+    private Path getPath(String key) {
+        return dir.resolve(key + EXT);
+    }
+    
+    /**
+     * Open an existing snapshot, marking it as recently used
+     * 
+     * @param key key
+     * @return input stream or null when not in the cache
+     * @throws IOException 
+     */
+    public InputStream get(String key) throws IOException {
+        Path file = getPath(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        LOG.info("Using snapshot {}", file);
+        return new BufferedInputStream(Files.newInputStream(file));
+    }
+    
+    /**
+     * Write a new snapshot.
+     * The snapshot is first written to a temporary file, so other runs never 
+     * see an incomplete snapshot, and is discarded when parsing fails.
+     * 
+     * @param key key
+     * @param loader parses the input
+     * @throws IOException 
+     */
+    public void put(String key, Loader loader) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                loader.load(Rio.createWriter(RDFFormat.BINARY, os));
+            }
+            Files.move(tmp, getPath(key), StandardCopyOption.REPLACE_EXISTING,
+                                            StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        LOG.info("Saved snapshot {}", getPath(key));
+        evict();
+    }
+    
+    /**
+     * Remove the least recently used snapshots until the cache is small enough
+     * 
+     * @throws IOException 
+     */
+    private void evict() throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(f -> f.getFileName().toString().endsWith(EXT))
+                    .sorted(Comparator.comparing((Path f) -> f.toFile().lastModified())
+                                    .reversed())
+                    .collect(Collectors.toList());
+        }
+        long size = 0;
+        for (Path f: files) {
+            size += Files.size(f);
+            if (size > maxSize) {
+                LOG.info("Removing snapshot {}", f);
+                Files.deleteIfExists(f);
+            }
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param dir cache directory
+     * @param maxSize maximum size of all snapshots in bytes
+     */
+    public SnapshotCache(Path dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,206 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.algebra.ArbitraryLengthPath;
+import org.eclipse.rdf4j.query.algebra.Difference;
+import org.eclipse.rdf4j.query.algebra.Group;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.LeftJoin;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.UnaryTupleOperator;
+import org.eclipse.rdf4j.query.algebra.Union;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+/**
+ * Number of triples per predicate and per class (object of rdf:type), 
+ * counted while loading the store.
+ * 
+ * Used to skip rules that cannot return any violation, because a triple 
+ * pattern that every result needs has no matching triples.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Statistics {
+    private final Map<IRI,long[]> predicates = new HashMap<>();
+    private final Map<Value,long[]> classes = new HashMap<>();
+    
+    /**
+     * Count a triple
+     * 
+     * @param st statement
+     */
+    public void add(Statement st) {
+        IRI pred = st.getPredicate();
+        predicates.computeIfAbsent(pred, k -> new long[1])[0]++;
+        if (pred.equals(RDF.TYPE)) {
+            classes.computeIfAbsent(st.getObject(), k -> new long[1])[0]++;
+        }
+    }
+    
+    /**
+     * Wrap an RDF handler, counting the triples passed to it
+     * 
+     * @param next handler
+     * @return counting handler
+     */
+    public RDFHandler count(RDFHandler next) {
+        return new RDFHandlerWrapper(next) {
+            @Override
+            public void handleStatement(Statement st) throws RDFHandlerException {
+                add(st);
+                super.handleStatement(st);
+            }
+        };
+    }
+    
+    /**
+     * Get the number of triples with a predicate
+     * 
+     * @param pred predicate
+     * @return number of triples
+     */
+    public long getCount(IRI pred) {
+        long[] c = predicates.get(pred);
+        return (c != null) ? c[0] : 0;
+    }
+    
+    /**
+     * Get the number of instances of a class
+     * 
+     * @param cls class
+     * @return number of rdf:type triples
+     */
+    public long getClassCount(Value cls) {
+        long[] c = classes.get(cls);
+        return (c != null) ? c[0] : 0;
+    }
+    
+    /**
+     * Estimate the cost of a rule, as the number of triples with the
+     * predicates and classes the rule can observe.
+     * 
+     * @param rule rule
+     * @return number of triples, or Long.MAX_VALUE if the rule can observe any triple
+     */
+    public long estimate(Rule rule) {
+        Footprint fp = rule.getFootprint();
+        if (fp.isComplete()) {
+            return Long.MAX_VALUE;
+        }
+        long n = fp.hasAllClasses() ? getCount(RDF.TYPE) : 0;
+        for (IRI pred: fp.getPredicates()) {
+            n += getCount(pred);
+        }
+        if (!fp.hasAllClasses()) {
+            for (IRI cls: fp.getClasses()) {
+                n += getClassCount(cls);
+            }
+        }
+        return n;
+    }
+    
+    /**
+     * Check if a triple pattern can have matching triples.
+     * Only a constant predicate (and a constant class for rdf:type) is checked.
+     * 
+     * @param sp triple pattern
+     * @return false if there are no matching triples
+     */
+    private boolean canMatch(StatementPattern sp) {
+        Value pred = sp.getPredicateVar().getValue();
+        if (!(pred instanceof IRI)) {
+            return true;
+        }
+        if (pred.equals(RDF.TYPE) && sp.getObjectVar().hasValue()) {
+            return getClassCount(sp.getObjectVar().getValue()) > 0;
+        }
+        return getCount((IRI) pred) > 0;
+    }
+    
+    /**
+     * Check if a query (part) can return results.
+     * Optional parts, MINUS and filters (including NOT EXISTS) are not taken 
+     * into account, a union can return results if one of its parts can.
+     * 
+     * @param expr query expression
+     * @return false if the expression certainly returns no results
+     */
+    private boolean canMatch(TupleExpr expr) {
+        if (expr instanceof StatementPattern) {
+            return canMatch((StatementPattern) expr);
+        }
+        if (expr instanceof Join) {
+            Join j = (Join) expr;
+            return canMatch(j.getLeftArg()) && canMatch(j.getRightArg());
+        }
+        if (expr instanceof LeftJoin) {
+            return canMatch(((LeftJoin) expr).getLeftArg());
+        }
+        if (expr instanceof Difference) {
+            return canMatch(((Difference) expr).getLeftArg());
+        }
+        if (expr instanceof Union) {
+            Union u = (Union) expr;
+            return canMatch(u.getLeftArg()) || canMatch(u.getRightArg());
+        }
+        if (expr instanceof ArbitraryLengthPath) {
+            ArbitraryLengthPath p = (ArbitraryLengthPath) expr;
+            return p.getMinLength() == 0 || canMatch(p.getPathExpression());
+        }
+        if (expr instanceof Group && ((Group) expr).getGroupBindingNames().isEmpty()) {
+            // aggregates without GROUP BY return one row, even without matches
+            return true;
+        }
+        if (expr instanceof UnaryTupleOperator) {
+            return canMatch(((UnaryTupleOperator) expr).getArg());
+        }
+        return true;
+    }
+    
+    /**
+     * Check if a rule can return violations.
+     * Rules implemented in Java are always validated.
+     * 
+     * @param rule rule
+     * @return false if the rule certainly returns no violations
+     */
+    public boolean canMatch(Rule rule) {
+        if (rule.isProcedural()) {
+            return true;
+        }
+        return canMatch(rule.getParsedQuery().getTupleExpr());
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+/**
+ * Checks triple-local rules while the input is being parsed, and optionally
+ * passes the triples to another handler (e.g. to add them to a store).
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class StreamingChecker extends AbstractRDFHandler {
+    private final List<TripleRule> rules;
+    private RDFHandler next;
+    private long count = 0;
+    
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        if (next != null) {
+            next.startRDF();
+        }
+    }
+    
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        if (next != null) {
+            next.endRDF();
+        }
+    }
+    
+    @Override
+    public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+        if (next != null) {
+            next.handleNamespace(prefix, uri);
+        }
+    }
+    
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        count++;
+        for (TripleRule rule: rules) {
+            rule.handle(st);
+        }
+        if (next != null) {
+            next.handleStatement(st);
+        }
+    }
+    
+    /**
+     * Set the handler receiving the triples after they have been checked
+     * 
+     * @param next RDF handler or null
+     */
+    public void setNext(RDFHandler next) {
+        this.next = next;
+    }
+    
+    /**
+     * Get the number of triples checked
+     * 
+     * @return number of triples
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param rules triple-local rules
+     */
+    public StreamingChecker(List<TripleRule> rules) {
+        this.rules = rules;
+    }
+}
@@ -0,0 +1,186 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.Optional;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategyFactory;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryOptimizerPipeline;
+import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.EvaluationStatistics;
+
+/**
+ * Evaluation strategy factory enforcing a deadline on every triple pattern
+ * lookup of a query.
+ * Unlike the maximum execution time of a query, this also cancels queries 
+ * that are busy inside a blocking operator like GROUP BY, ORDER BY or 
+ * a cartesian product.
+ * The deadline is set per thread, before evaluating the query.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class TimeLimitStrategyFactory implements EvaluationStrategyFactory {
+    private final static ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+    private final static int CHECK_EVERY = 256;
+    
+    private final EvaluationStrategyFactory factory;
+    
+    /**
+     * Set the deadline for queries evaluated by the current thread
+     * 
+     * @param seconds time limit in seconds, 0 to remove the deadline
+     */
+    public static void setLimit(int seconds) {
+        if (seconds > 0) {
+            DEADLINE.set(System.nanoTime() + seconds * 1_000_000_000L);
+        } else {
+            DEADLINE.remove();
+        }
+    }
+    
+    /**
+     * Iteration throwing an exception once the deadline has passed
+     */
+    private static class TimeLimitIteration 
+                        extends IterationWrapper<Statement, QueryEvaluationException> {
+        private final long deadline;
+        private int count = 0;
+        
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (++count % CHECK_EVERY == 0 && System.nanoTime() > deadline) {
+                throw new QueryInterruptedException("Query timed out");
+            }
+            return super.hasNext();
+        }
+        
+        /**
+         * Constructor
+         * 
+         * @param iter statements
+         * @param deadline deadline in nanoseconds
+         */
+        TimeLimitIteration(CloseableIteration<? extends Statement, QueryEvaluationException> iter, 
+                            long deadline) {
+            super(iter);
+            this.deadline = deadline;
+        }
+    }
+    
+    /**
+     * Triple source wrapping the statements in a time limited iteration
+     */
+    private static class TimeLimitTripleSource implements TripleSource {
+        private final TripleSource source;
+        private final long deadline;
+        
+        @Override
+        public CloseableIteration<? extends Statement, QueryEvaluationException> 
+                getStatements(Resource subj, IRI pred, Value obj, Resource... contexts)
+                                                    throws QueryEvaluationException {
+            if (System.nanoTime() > deadline) {
+                throw new QueryInterruptedException("Query timed out");
+            }
+            return new TimeLimitIteration(source.getStatements(subj, pred, obj, contexts), 
+                                            deadline);
+        }
+        
+        @Override
+        public ValueFactory getValueFactory() {
+            return source.getValueFactory();
+        }
+        
+        /**
+         * Constructor
+         * 
+         * @param source triple source
+         * @param deadline deadline in nanoseconds
+         */
+        TimeLimitTripleSource(TripleSource source, long deadline) {
+            this.source = source;
+            this.deadline = deadline;
+        }
+    }
+    
+    @Override
+    public EvaluationStrategy createEvaluationStrategy(Dataset dataset, 
+                                TripleSource source, EvaluationStatistics stats) {
+        Long deadline = DEADLINE.get();
+        if (deadline != null) {
+            source = new TimeLimitTripleSource(source, deadline);
+        }
+        return factory.createEvaluationStrategy(dataset, source, stats);
+    }
+    
+    @Override
+    public void setQuerySolutionCacheThreshold(long threshold) {
+        factory.setQuerySolutionCacheThreshold(threshold);
+    }
+    
+    @Override
+    public long getQuerySolutionCacheThreshold() {
+        return factory.getQuerySolutionCacheThreshold();
+    }
+    
+    @Override
+    public void setOptimizerPipeline(QueryOptimizerPipeline pipeline) {
+        factory.setOptimizerPipeline(pipeline);
+    }
+    
+    @Override
+    public Optional<QueryOptimizerPipeline> getOptimizerPipeline() {
+        return factory.getOptimizerPipeline();
+    }
+    
+    @Override
+    public boolean isTrackResultSize() {
+        return factory.isTrackResultSize();
+    }
+    
+    @Override
+    public void setTrackResultSize(boolean track) {
+        factory.setTrackResultSize(track);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param factory factory to wrap
+     */
+    public TimeLimitStrategyFactory(EvaluationStrategyFactory factory) {
+        this.factory = factory;
+    }
+}
@@ -0,0 +1,319 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.EmptyIteration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.algebra.BindingSetAssignment;
+import org.eclipse.rdf4j.query.algebra.Filter;
+import org.eclipse.rdf4j.query.algebra.Join;
+import org.eclipse.rdf4j.query.algebra.Projection;
+import org.eclipse.rdf4j.query.algebra.ProjectionElem;
+import org.eclipse.rdf4j.query.algebra.QueryModelNode;
+import org.eclipse.rdf4j.query.algebra.QueryRoot;
+import org.eclipse.rdf4j.query.algebra.StatementPattern;
+import org.eclipse.rdf4j.query.algebra.SubQueryValueOperator;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.algebra.ValueExpr;
+import org.eclipse.rdf4j.query.algebra.Var;
+import org.eclipse.rdf4j.query.algebra.evaluation.EvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.TripleSource;
+import org.eclipse.rdf4j.query.algebra.evaluation.ValueExprEvaluationException;
+import org.eclipse.rdf4j.query.algebra.evaluation.impl.StrictEvaluationStrategy;
+import org.eclipse.rdf4j.query.algebra.helpers.AbstractQueryModelVisitor;
+
+/**
+ * Rule that only needs to look at one triple at a time, and can therefore be
+ * checked while the input file is being parsed, without a triple store.
+ * 
+ * Only SPARQL queries with a single triple pattern, optionally with a VALUES
+ * block and filters not referring to other triples, are supported.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class TripleRule {
+    private final static TripleSource EMPTY = new TripleSource() {
+        @Override
+        public CloseableIteration<? extends Statement, QueryEvaluationException> 
+                getStatements(Resource s, IRI p, Value o, Resource... ctx) {
+            return new EmptyIteration<>();
+        }
+        
+        @Override
+        public ValueFactory getValueFactory() {
+            return SimpleValueFactory.getInstance();
+        }
+    };
+    
+    private final List<String> columns;
+    private final StatementPattern pattern;
+    private final List<BindingSet> values;
+    private final List<ValueExpr> filters;
+    private final EvaluationStrategy strategy;
+    
+    private final Set<List<Value>> matched = new HashSet<>();
+    private final List<List<String>> rows = new ArrayList<>();
+    
+    /**
+     * Check if a filter only uses the values of the current solution, 
+     * i.e. does not contain subqueries like (NOT) EXISTS
+     * 
+     * @param expr filter expression
+     * @return true if local
+     */
+    private static boolean isLocal(ValueExpr expr) {
+        boolean[] local = { true };
+        expr.visit(new AbstractQueryModelVisitor<RuntimeException>() {
+            @Override
+            protected void meetNode(QueryModelNode node) {
+                if (node instanceof SubQueryValueOperator) {
+                    local[0] = false;
+                } else {
+                    super.meetNode(node);
+                }
+            }
+        });
+        return local[0];
+    }
+    
+    /**
+     * Try to create a triple-local rule from a validation rule
+     * 
+     * @param rule validation rule
+     * @return triple rule or null when the query needs a triple store
+     */
+    public static TripleRule create(Rule rule) {
+        if (rule.isProcedural()) {
+            return null;
+        }
+        TupleExpr expr;
+        try {
+            expr = rule.getParsedQuery().getTupleExpr();
+        } catch (MalformedQueryException mqe) {
+            return null;
+        }
+        if (expr instanceof QueryRoot) {
+            expr = ((QueryRoot) expr).getArg();
+        }
+        if (!(expr instanceof Projection)) {
+            return null;
+        }
+        Projection proj = (Projection) expr;
+        List<String> cols = new ArrayList<>();
+        for (ProjectionElem elem: proj.getProjectionElemList().getElements()) {
+            if (elem.getSourceExpression() != null) {
+                return null;
+            }
+            cols.add(elem.getSourceName());
+        }
+        
+        List<ValueExpr> filters = new ArrayList<>();
+        expr = proj.getArg();
+        while (expr instanceof Filter) {
+            Filter f = (Filter) expr;
+            if (!isLocal(f.getCondition())) {
+                return null;
+            }
+            filters.add(f.getCondition());
+            expr = f.getArg();
+        }
+        
+        List<BindingSet> values = null;
+        if (expr instanceof Join) {
+            TupleExpr left = ((Join) expr).getLeftArg();
+            TupleExpr right = ((Join) expr).getRightArg();
+            if (left instanceof BindingSetAssignment) {
+                TupleExpr tmp = left;
+                left = right;
+                right = tmp;
+            }
+            if (!(right instanceof BindingSetAssignment)) {
+                return null;
+            }
+            values = new ArrayList<>();
+            ((BindingSetAssignment) right).getBindingSets().forEach(values::add);
+            expr = left;
+        }
+        
+        if (!(expr instanceof StatementPattern) || 
+                ((StatementPattern) expr).getContextVar() != null) {
+            return null;
+        }
+        return new TripleRule(cols, (StatementPattern) expr, values, filters);
+    }
+    
+    /**
+     * Bind a value of the triple to a variable of the pattern
+     * 
+     * @param bs current bindings
+     * @param var variable of the triple pattern
+     * @param val value
+     * @return false if the value does not match
+     */
+    private static boolean bind(QueryBindingSet bs, Var var, Value val) {
+        if (var.hasValue()) {
+            return var.getValue().equals(val);
+        }
+        Value prev = bs.getValue(var.getName());
+        if (prev != null) {
+            return prev.equals(val);
+        }
+        bs.addBinding(var.getName(), val);
+        return true;
+    }
+    
+    /**
+     * Check if the solution passes all filters.
+     * An error while evaluating a filter counts as false, as in SPARQL.
+     * 
+     * @param bs bindings
+     * @return true if all filters are passed
+     */
+    private boolean passes(BindingSet bs) {
+        for (ValueExpr filter: filters) {
+            try {
+                if (!strategy.isTrue(filter, bs)) {
+                    return false;
+                }
+            } catch (ValueExprEvaluationException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Add a violation
+     * 
+     * @param bs bindings
+     */
+    private void addRow(BindingSet bs) {
+        List<String> row = new ArrayList<>(columns.size());
+        for (String col: columns) {
+            Value v = bs.getValue(col);
+            row.add(v != null ? v.stringValue() : "");
+        }
+        rows.add(row);
+    }
+    
+    /**
+     * Check a triple against this rule.
+     * Duplicate triples are only reported once, like in a triple store.
+     * 
+     * @param st statement
+     */
+    public void handle(Statement st) {
+        QueryBindingSet bs = new QueryBindingSet();
+        if (!bind(bs, pattern.getSubjectVar(), st.getSubject()) ||
+                !bind(bs, pattern.getPredicateVar(), st.getPredicate()) ||
+                !bind(bs, pattern.getObjectVar(), st.getObject())) {
+            return;
+        }
+        
+        List<Value> key = null;
+        if (values == null) {
+            if (passes(bs)) {
+                key = List.of(st.getSubject(), st.getPredicate(), st.getObject());
+                if (matched.add(key)) {
+                    addRow(bs);
+                }
+            }
+            return;
+        }
+        for (BindingSet vals: values) {
+            QueryBindingSet solution = new QueryBindingSet(bs);
+            boolean compatible = true;
+            for (String name: vals.getBindingNames()) {
+                Value prev = solution.getValue(name);
+                Value val = vals.getValue(name);
+                if (prev == null) {
+                    solution.addBinding(name, val);
+                } else if (!prev.equals(val)) {
+                    compatible = false;
+                    break;
+                }
+            }
+            if (compatible && passes(solution)) {
+                if (key == null) {
+                    key = List.of(st.getSubject(), st.getPredicate(), st.getObject());
+                    if (!matched.add(key)) {
+                        return;
+                    }
+                }
+                addRow(solution);
+            }
+        }
+    }
+    
+    /**
+     * Get column names of the result
+     * 
+     * @return list of names
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Get the violations found so far
+     * 
+     * @return list of rows
+     */
+    public List<List<String>> getRows() {
+        return rows;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param columns projected variables
+     * @param pattern triple pattern
+     * @param values VALUES block or null
+     * @param filters filter expressions
+     */
+    private TripleRule(List<String> columns, StatementPattern pattern, 
+                        List<BindingSet> values, List<ValueExpr> filters) {
+        this.columns = columns;
+        this.pattern = pattern;
+        this.values = values;
+        this.filters = filters;
+        this.strategy = new StrictEvaluationStrategy(EMPTY, null);
+    }
+}
@@ -25,36 +25,59 @@
 package be.fedict.rdf.validator;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
 
-import java.nio.file.DirectoryStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystemNotFoundException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
+import org.eclipse.rdf4j.common.transaction.IsolationLevels;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.BindingSet;
-import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.util.RDFInserter;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFParser;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+import org.eclipse.rdf4j.sail.Sail;
 import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,233 +90,1647 @@ import org.slf4j.LoggerFactory;
 public class Validator {
     private final static Logger LOG = LoggerFactory.getLogger(Validator.class);
     
-    public final static String BUILTIN = "builtin://";
+    public final static String BUILTIN = Ruleset.BUILTIN;
     public final static String BASE_URI = "http://data.gov.be";
+    public final static String STORE_MEMORY = "memory";
+    public final static String STORE_NATIVE = "native:";
+    
+    private final static String NATIVE_INDEXES = "spoc,posc";
+    private final static String SOURCE_INFO = "validator-source.properties";
     
     private final Path path;
-    private final SimpleResultWriter sw;
+    private final InputStream in;
+    private final URI url;
+    private final String name;
+    private SimpleResultWriter sw;
 
     private Repository repo;
-    private FileSystem fs;
-    
-    /**
-     * Get the first line comment of the query
-     * 
-     * @param str
-     * @return comment or empty string
-     */
-    private String getComment(String str) {
-        if (str.startsWith("#")) {
-            int eol = str.replaceAll("\r", "\n").indexOf("\n");
-            if (eol > 1) {
-                return str.substring(1, eol);
-            }
-        }
-        return "";
-    }            
-    
-    /**
-     * Get path from directory or jar
-     * 
-     * @param dir
-     * @return
-     * @throws IOException 
-     */
-    private Path getPath(String ruleset) throws IOException {
-        if (ruleset == null || ruleset.isEmpty()) {
-            throw new IOException("Empty or null ruleset");
-        }
-        
-        if (!ruleset.startsWith(BUILTIN)) {
-            LOG.info("Using validation queries from directory {}", ruleset);
-            return Paths.get(ruleset);
-        }
-        
-        String builtin = ruleset.replaceFirst(BUILTIN, "/");
-        LOG.info("Using built-in rulesets {}", builtin);
-                
-        URI uri;
-        try {
-            uri = Validator.class.getResource(builtin).toURI();
-        } catch (URISyntaxException ex) {
-            throw new IOException(ex);
-        }
-        if (uri.getScheme().equals("jar")) {
-            try {
-                fs = FileSystems.getFileSystem(uri);
-            } catch (FileSystemNotFoundException f) {
-                fs = FileSystems.newFileSystem(uri, Collections.emptyMap());
-            }
-            return fs.getPath(builtin);
-        }
-        return Paths.get(uri);
-    }
-
-    /**
-     * Validate the RDF triples using the rules (SPARQL queries) in a directory,
-     * or the built-in set if directory is NULL.
-     * 
-     * @param ruleset ruleset containing SPARQL queries
-     * @throws IOException 
-     */
-    private List<String> readRules(String ruleset) throws IOException {
-        ArrayList<String> rules = new ArrayList<>(); 
-       
-        Path pathdir = getPath(ruleset);
-        
-        if (Files.isDirectory(pathdir)) {
-			try (DirectoryStream<Path> stream = Files.newDirectoryStream(pathdir)) {
-				for(Path file: stream) {
-					LOG.debug("Rule {}", file);
-					String rule = Files.readString(file);
-					rules.add(rule);
-				}
-			}
-        } else {
-            LOG.warn("Path {} is not a directory", pathdir);
-        }
-		if (fs != null) {
-			fs.close();
-		}
-        return rules;
-    }
+    private int threads = 1;
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+    private String store = STORE_MEMORY;
+    private Path storeDir;
+    private RDFFormat format;
+    private boolean streaming = false;
+    private boolean lint = false;
+    private boolean filter = false;
+    private boolean partition = false;
+    private boolean perGraph = false;
+    private boolean fuse = true;
+    private RuleFusion fusion;
+    private Path incrementalDir;
+    private Incremental incremental;
+    private Footprint footprint;
+    private Statistics stats;
+    private SnapshotCache cache;
+    private boolean profile = false;
+    private int timeout = 0;
+    private int budget = 0;
+    private int maxViolations = 0;
+    private int maxRuleViolations = 0;
+    private boolean failFast = false;
+    private final AtomicInteger violationsTaken = new AtomicInteger();
+    private volatile long deadline = 0;
+    private final AtomicInteger timeouts = new AtomicInteger();
+    private final Metrics metrics = new Metrics();
+    private final Map<Rule,TripleRule> streamed = new HashMap<>();
     
     /**
      * Validate using a SPARQL query
      * 
      * @param con RDF triplestore connection
-     * @param query query string
+     * @param rule rule
      * @param sw result writer
      * @return number of violations (if any)
      * @throws IOException
      */
-    private int validateRule(RepositoryConnection con, String query, SimpleResultWriter sw) 
+    private int validateRule(RepositoryConnection con, Rule rule, SimpleResultWriter sw) 
                                                             throws IOException {
         int violations = 0;
+        long firstRow = -1;
+        boolean table = false;
+        boolean timedOut = false;
+        
+        int limit = getLimit(rule);
+        if (limit < 0) {
+            return notValidated(rule, "time budget exceeded", sw);
+        }
+        int cap = getRuleCap();
+        boolean capped = false;
         
-        TupleQuery q = con.prepareTupleQuery(QueryLanguage.SPARQL, query);
+        long alloc = Metrics.allocatedBytes();
+        long start = System.nanoTime();
+        TupleQuery q = rule.prepare(con);
+        long prepared = System.nanoTime();
     
-        sw.startSection(getComment(query));
-        sw.code(query);
+        sw.startSection(rule.getTitle());
+        sw.code(rule.getQuery());
+        
+        List<String> cols = List.of();
+        List<List<String>> found = (incremental != null) ? new ArrayList<>() : null;
         
-        Date start = new Date();
+        TimeLimitStrategyFactory.setLimit(limit);
         try (TupleQueryResult res = q.evaluate()) {
             if (res.hasNext()) {
-                List<String> cols = res.getBindingNames();
+                firstRow = System.nanoTime() - prepared;
+                cols = res.getBindingNames();
                 
                 sw.startTable("");
                 sw.columnNames(cols);
+                table = true;
         
                 while(res.hasNext()) {
+                    if ((cap > 0 && violations >= cap) || !take()) {
+                        // closing the result stops the evaluation of the query
+                        capped = true;
+                        break;
+                    }
                     violations++;
                     BindingSet next = res.next();
                     List<String> row = cols.stream()
                                     .map(col -> next.getValue(col).stringValue())
                                     .collect(Collectors.toList());
                     sw.row(row);
+                    if (found != null) {
+                        found.add(row);
+                    }
                 }
-                sw.endTable();
+            }
+        } catch (QueryInterruptedException qie) {
+            LOG.warn("Rule {} timed out after {} s", rule.getName(), limit);
+            timedOut = true;
+        } finally {
+            TimeLimitStrategyFactory.setLimit(0);
+        }
+        if (table) {
+            sw.endTable();
+        }
+        long end = System.nanoTime();
+        LOG.debug("Query took {} ms", (end - start) / 1_000_000);
+        metrics.add(new RuleMetrics(rule, prepared - start, end - prepared, firstRow, 
+                violations, (alloc < 0) ? -1 : Metrics.allocatedBytes() - alloc));
+        if (!capped) {
+            rule.setCost(end - start);
+        }
+        
+        if (timedOut) {
+            timeouts.incrementAndGet();
+            sw.text("Timed out after " + limit + " s, number of violations so far: " 
+                                                                    + violations);
+        } else if (capped) {
+            writeCapped(violations, sw);
+        } else {
+            writeCount(violations, sw);
+            if (incremental != null) {
+                incremental.put(rule, cols, found);
             }
         }
-        LOG.debug("Query took {} ms", new Date().getTime() - start.getTime());
+        sw.endSection();
         
+        return violations;
+    }
+    
+    /**
+     * Get the time limit of a rule: the timeout of the rule itself or the 
+     * default timeout, but never more than the time left in the budget.
+     * 
+     * @param rule rule
+     * @return limit in seconds, 0 for no limit or -1 if no time is left
+     */
+    private int getLimit(Rule rule) {
+        return getLimit(rule, 0);
+    }
+    
+    /**
+     * Get the time limit of a rule that is validated in several parts 
+     * (e.g. per dataset), so the timeout covers all parts together.
+     * 
+     * @param rule rule
+     * @param spent time already spent on other parts, in nanoseconds
+     * @return limit in seconds, 0 for no limit or -1 if no time is left
+     */
+    private int getLimit(Rule rule, long spent) {
+        int limit = (rule.getTimeout() > 0) ? rule.getTimeout() : timeout;
+        if (limit > 0 && spent > 0) {
+            long left = TimeUnit.SECONDS.toNanos(limit) - spent;
+            if (left <= 0) {
+                return -1;
+            }
+            limit = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(left));
+        }
+        if (deadline != 0) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return -1;
+            }
+            int secs = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(left));
+            limit = (limit > 0) ? Math.min(limit, secs) : secs;
+        }
+        return limit;
+    }
+    
+    /**
+     * Get the maximum number of violations of one rule
+     * 
+     * @return maximum number, 0 for no maximum
+     */
+    private int getRuleCap() {
+        return failFast ? 1 : maxRuleViolations;
+    }
+    
+    /**
+     * Count a violation towards the maximum number of violations of all rules
+     * 
+     * @return false if the maximum was already reached
+     */
+    private boolean take() {
+        int max = failFast ? 1 : maxViolations;
+        if (max <= 0) {
+            return true;
+        }
+        if (violationsTaken.incrementAndGet() <= max) {
+            return true;
+        }
+        violationsTaken.decrementAndGet();
+        return false;
+    }
+    
+    /**
+     * Check if the maximum number of violations of all rules was reached
+     * 
+     * @return true if no more violations are needed
+     */
+    private boolean isFull() {
+        int max = failFast ? 1 : maxViolations;
+        return max > 0 && violationsTaken.get() >= max;
+    }
+    
+    /**
+     * Write the number of violations of a rule that stopped at the maximum
+     * 
+     * @param violations number of violations
+     * @param sw result writer
+     * @throws IOException 
+     */
+    private void writeCapped(int violations, SimpleResultWriter sw) throws IOException {
+        sw.text("Number of violations: at least " + violations 
+                                            + " (stopped at maximum number)");
+    }
+    
+    /**
+     * Write a rule that was not validated
+     * 
+     * @param rule rule
+     * @param reason reason
+     * @param sw result writer
+     * @return zero violations
+     * @throws IOException 
+     */
+    private int notValidated(Rule rule, String reason, SimpleResultWriter sw) 
+                                                            throws IOException {
+        sw.startSection(rule.getTitle());
+        sw.code(rule.getQuery());
+        sw.text("Not validated: " + reason);
+        sw.endSection();
+        return 0;
+    }
+    
+    /**
+     * Write a rule that was skipped because it cannot return violations
+     * 
+     * @param rule rule
+     * @param sw result writer
+     * @return zero violations
+     * @throws IOException 
+     */
+    private int skipped(Rule rule, SimpleResultWriter sw) throws IOException {
+        metrics.add(new RuleMetrics(rule, 0, 0, -1, 0, -1));
+        if (incremental != null) {
+            incremental.put(rule, List.of(), List.of());
+        }
+        sw.startSection(rule.getTitle());
+        sw.code(rule.getQuery());
+        sw.text("OK (skipped: no candidates)");
+        sw.endSection();
+        return 0;
+    }
+    
+    /**
+     * Write the number of violations of a rule
+     * 
+     * @param violations number of violations
+     * @param sw result writer
+     * @throws IOException 
+     */
+    private void writeCount(int violations, SimpleResultWriter sw) throws IOException {
         if (violations == 0) {
             sw.text("OK");
         } else {
 			sw.text("Number of violations: " + violations);
 		}
+    }
+    
+    /**
+     * Write the violations of a rule that were already collected
+     * 
+     * @param rule rule
+     * @param cols column names
+     * @param rows violations
+     * @param timedOut true if the rule timed out
+     * @param sw result writer
+     * @return number of violations (if any)
+     * @throws IOException 
+     */
+    private int writeRows(Rule rule, List<String> cols, List<List<String>> rows, 
+                        boolean timedOut, SimpleResultWriter sw) throws IOException {
+        sw.startSection(rule.getTitle());
+        sw.code(rule.getQuery());
+        int cap = getRuleCap();
+        int violations = 0;
+        boolean capped = false;
+        if (!rows.isEmpty()) {
+            sw.startTable("");
+            sw.columnNames(cols);
+            for (List<String> row: rows) {
+                if ((cap > 0 && violations >= cap) || !take()) {
+                    capped = true;
+                    break;
+                }
+                violations++;
+                sw.row(row);
+            }
+            sw.endTable();
+        }
+        if (timedOut) {
+            timeouts.incrementAndGet();
+            sw.text("Timed out, number of violations so far: " + violations);
+        } else {
+            if (capped) {
+                writeCapped(violations, sw);
+            } else {
+                writeCount(violations, sw);
+            }
+            if (incremental != null) {
+                incremental.put(rule, cols, rows);
+            }
+        }
         sw.endSection();
         
         return violations;
     }
     
     /**
-     * Validates RDF triples from input stream against rulesets
-     *
-     * @param rulesets directory or built-in set(s) containing SPARQL rules to validate
-     * @return number of violations
+     * Validate using a rule implemented in Java
+     * 
+     * @param con RDF triplestore connection
+     * @param rule rule
+     * @param sw result writer
+     * @return number of violations (if any)
      * @throws IOException 
      */
-    public int validate(String[] rulesets) throws IOException {
-        int violations = 0;
-        
-        RepositoryConnection con = repo.getConnection();
+    private int validateProcedural(RepositoryConnection con, Rule rule, 
+                                    SimpleResultWriter sw) throws IOException {
+        ProceduralRule impl = rule.getProcedural();
+        List<List<String>> rows = new ArrayList<>();
+        long[] firstRow = { -1 };
         
-        sw.start();
+        long alloc = Metrics.allocatedBytes();
+        long start = System.nanoTime();
+        impl.validate(con, row -> {
+            if (firstRow[0] < 0) {
+                firstRow[0] = System.nanoTime() - start;
+            }
+            rows.add(row);
+        }, incremental != null);
+        long end = System.nanoTime();
+        LOG.debug("Rule took {} ms", (end - start) / 1_000_000);
+        rule.setCost(end - start);
+        metrics.add(new RuleMetrics(rule, 0, end - start, firstRow[0], rows.size(), 
+                            (alloc < 0) ? -1 : Metrics.allocatedBytes() - alloc));
         
-        sw.title("RDF Validation");
-        sw.text("File to validate: " + path);
-        sw.text("Number of triples: " + con.size());
-        sw.text("Current time: " + new Date());
+        return writeRows(rule, impl.getColumns(), rows, false, sw);
+    }
+    
+    /**
+     * Validate a rule checking for a missing property, together with the other
+     * rules checking a property of the same class
+     * 
+     * @param con RDF triplestore connection
+     * @param rule rule
+     * @param sw result writer
+     * @return number of violations (if any)
+     * @throws IOException 
+     */
+    private int validateFused(RepositoryConnection con, Rule rule, 
+                                    SimpleResultWriter sw) throws IOException {
+        long start = System.nanoTime();
+        List<List<String>> rows = fusion.getRows(con, rule);
+        long end = System.nanoTime();
+        rule.setCost(end - start);
+        metrics.add(new RuleMetrics(rule, 0, end - start, -1, rows.size(), -1));
         
-        for(String ruleset: rulesets) {
-            sw.startSection(ruleset);
-            List<String> rules = readRules(ruleset);
+        return writeRows(rule, fusion.getColumns(rule), rows, false, sw);
+    }
+    
+    /**
+     * Validate a rule, either using the results of the check while loading or
+     * by querying the store
+     * 
+     * @param con RDF triplestore connection or null when there is no store
+     * @param rule rule
+     * @param sw result writer
+     * @return number of violations (if any)
+     * @throws IOException 
+     */
+    private int validateAny(RepositoryConnection con, Rule rule, SimpleResultWriter sw) 
+                                                            throws IOException {
+        LOG.debug("Validating {}", rule.getName());
         
-            for(String rule: rules) {
-                LOG.debug("Validating {}", rule.replace("\n", " "));
-                violations += validateRule(con, rule, sw);
+        if (isFull()) {
+            return notValidated(rule, "maximum number of violations reached", sw);
+        }
+        TripleRule triple = streamed.get(rule);
+        if (triple != null) {
+            metrics.add(new RuleMetrics(rule, 0, 0, -1, triple.getRows().size(), -1));
+            return writeRows(rule, triple.getColumns(), triple.getRows(), false, sw);
+        }
+        if (con == null) {
+            return notValidated(rule, "rule needs a triple store", sw);
+        }
+        if (stats != null && !stats.canMatch(rule)) {
+            LOG.debug("Skipping {}, no candidates", rule.getName());
+            return skipped(rule, sw);
+        }
+        if (incremental != null) {
+            long start = System.nanoTime();
+            List<List<String>> rows = incremental.revalidate(con, rule);
+            if (rows != null) {
+                metrics.add(new RuleMetrics(rule, 0, System.nanoTime() - start, -1, 
+                                                                rows.size(), -1));
+                return writeRows(rule, incremental.getColumns(rule), rows, false, sw);
             }
-            sw.endSection();
         }
-        
-        sw.text("Total number of violations: " + violations);
+        if (fusion != null && fusion.covers(rule)) {
+            if (getLimit(rule) < 0) {
+                return notValidated(rule, "time budget exceeded", sw);
+            }
+            return validateFused(con, rule, sw);
+        }
+        if (rule.isProcedural()) {
+            if (getLimit(rule) < 0) {
+                return notValidated(rule, "time budget exceeded", sw);
+            }
+            return validateProcedural(con, rule, sw);
+        }
+        return validateRule(con, rule, sw);
+    }
+    
+    /**
+     * Validate the rules one after another on the same connection
+     * 
+     * @param con RDF triplestore connection or null when there is no store
+     * @param ruleset ruleset
+     * @return number of violations
+     * @throws IOException 
+     */
+    private int validateSequential(RepositoryConnection con, Ruleset ruleset) 
+                                                            throws IOException {
+        int violations = 0;
+
+        sw.startSection(ruleset.getName());
+        for(Rule rule: ruleset.getRules()) {
+            violations += validateAny(con, rule, sw);
+        }
+        sw.endSection();
 
-        sw.end();
-        
         return violations;
     }
     
     /**
-     * Close repository
+     * Get the order in which rules are validated in fail-fast mode: rules 
+     * that were already validated (e.g. on a previous file) by measured time, 
+     * then the others by the number of triples they can observe.
+     * 
+     * @param rulesets rulesets
+     * @return list of rules, cheapest first
      */
-    public void close() {
-        LOG.debug("Shutdown repository");
-        repo.getConnection().close();
-        repo.shutDown();
+    private List<Rule> getCheapestFirst(List<Ruleset> rulesets) {
+        List<Rule> rules = new ArrayList<>();
+        for (Ruleset ruleset: rulesets) {
+            rules.addAll(ruleset.getRules());
+        }
+        Map<Rule,Long> estimates = new HashMap<>();
+        for (Rule rule: rules) {
+            estimates.put(rule, (stats != null) ? stats.estimate(rule) : Long.MAX_VALUE);
+        }
+        rules.sort(Comparator.comparing((Rule r) -> !streamed.containsKey(r))
+                            .thenComparing(r -> r.getCost() < 0)
+                            .thenComparingLong(Rule::getCost)
+                            .thenComparingLong(estimates::get));
+        return rules;
     }
     
     /**
-     * Initialize repository and load triples
+     * Validate the rules, cheapest first, until a rule has a violation.
+     * The report is written in the same order as the sequential validation,
+     * rules that were not validated are reported as such.
      * 
+     * @param con RDF triplestore connection or null when there is no store
+     * @param rulesets rulesets
+     * @return number of violations (0 or 1)
      * @throws IOException 
      */
-    public void init() throws IOException {
-        LOG.debug("Initialize repository");
-        repo = new SailRepository(new MemoryStore());
-
-        Optional<RDFFormat> fmt = Rio.getParserFormatForFileName(path.toString());
-        if (!fmt.isPresent()) {
-            throw new IOException("Could not determine file type");
-        }
+    private int validateFailFast(RepositoryConnection con, List<Ruleset> rulesets) 
+                                                            throws IOException {
+        int violations = 0;
         
-        LOG.debug("Adding triples");
-        BufferedReader r = Files.newBufferedReader(path);
+        Map<Rule,ResultBuffer> buffers = new HashMap<>();
+        for (Rule rule: getCheapestFirst(rulesets)) {
+            if (violations > 0) {
+                break;
+            }
+            ResultBuffer buf = new ResultBuffer();
+            violations += validateAny(con, rule, buf);
+            buffers.put(rule, buf);
+        }
         
-        Date start = new Date();
-        RepositoryConnection con = repo.getConnection();
+        for (Ruleset ruleset: rulesets) {
+            sw.startSection(ruleset.getName());
+            for (Rule rule: ruleset.getRules()) {
+                ResultBuffer buf = buffers.get(rule);
+                if (buf != null) {
+                    buf.replay(sw);
+                } else {
+                    notValidated(rule, "stopped at first violation", sw);
+                }
+            }
+            sw.endSection();
+        }
+        return violations;
+    }
+    
+    /**
+     * Validate all rules of all rulesets in parallel, each rule on its own
+     * connection. 
+     * The results are buffered and written in the same order as the sequential
+     * validation, so the reports can still be compared.
+     * 
+     * @param rulesets rulesets
+     * @return number of violations
+     * @throws IOException 
+     */
+    private int validateParallel(List<Ruleset> rulesets) throws IOException {
+        int violations = 0;
+
+        LOG.info("Validating using {} threads", threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
         try {
-            con.add(r, BASE_URI, fmt.get());
-        } catch (RepositoryException cve) {
-            LOG.error("Error adding triples", cve);
+            List<List<Future<Integer>>> results = new ArrayList<>();
+            List<List<ResultBuffer>> buffers = new ArrayList<>();
+            
+            for(Ruleset ruleset: rulesets) {
+                List<Future<Integer>> futures = new ArrayList<>();
+                List<ResultBuffer> bufs = new ArrayList<>();
+                for(Rule rule: ruleset.getRules()) {
+                    ResultBuffer buf = new ResultBuffer();
+                    if (streamed.containsKey(rule)) {
+                        futures.add(CompletableFuture.completedFuture(
+                                                validateAny(null, rule, buf)));
+                        bufs.add(buf);
+                        continue;
+                    }
+                    futures.add(pool.submit(() -> {
+                        try (RepositoryConnection con = repo.getConnection()) {
+                            return validateAny(con, rule, buf);
+                        }
+                    }));
+                    bufs.add(buf);
+                }
+                results.add(futures);
+                buffers.add(bufs);
+            }
+            
+            for (int i = 0; i < rulesets.size(); i++) {
+                sw.startSection(rulesets.get(i).getName());
+                for (int j = 0; j < results.get(i).size(); j++) {
+                    violations += results.get(i).get(j).get();
+                    buffers.get(i).get(j).replay(sw);
+                }
+                sw.endSection();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
         }
-        LOG.info("{} triples loaded in {} ms", 
-                con.size(), new Date().getTime() - start.getTime());
+        return violations;
+    }
+    
+    /**
+     * Validate the dataset-scoped rules on one partition, using a small
+     * in-memory store with only the triples of that partition.
+     * 
+     * @param m triples of the partition
+     * @param name name of the partition, for logging
+     * @param local dataset-scoped rules
+     * @param cols column names per rule, added when first found
+     * @param timedOut rules that timed out
+     * @param times evaluation time per rule, on all shards so far
+     * @return violations per rule
+     * @throws IOException 
+     */
+    private List<List<List<String>>> validateShard(Model m, String name, List<Rule> local,
+                                        Map<Rule,List<String>> cols, Set<Rule> timedOut,
+                                        AtomicLongArray times) throws IOException {
+        List<List<List<String>>> results = new ArrayList<>();
+        Repository shard = new SailRepository(createMemoryStore());
+        try (RepositoryConnection con = shard.getConnection()) {
+            con.add(m);
+            for (int i = 0; i < local.size(); i++) {
+                Rule rule = local.get(i);
+                List<List<String>> rows = new ArrayList<>();
+                results.add(rows);
                 
-        if(con.isEmpty()) {
-            LOG.error("No statements loaded");
-            close();
+                int limit = getLimit(rule, times.get(i));
+                if (limit < 0) {
+                    timedOut.add(rule);
+                    continue;
+                }
+                long start = System.nanoTime();
+                TimeLimitStrategyFactory.setLimit(limit);
+                try (TupleQueryResult res = rule.prepare(con).evaluate()) {
+                    List<String> names = res.getBindingNames();
+                    cols.putIfAbsent(rule, names);
+                    while (res.hasNext()) {
+                        BindingSet next = res.next();
+                        rows.add(names.stream()
+                                    .map(col -> next.getValue(col).stringValue())
+                                    .collect(Collectors.toList()));
+                    }
+                } catch (QueryInterruptedException qie) {
+                    LOG.warn("Rule {} timed out on {}", rule.getName(), name);
+                    timedOut.add(rule);
+                } finally {
+                    TimeLimitStrategyFactory.setLimit(0);
+                }
+                times.addAndGet(i, System.nanoTime() - start);
+            }
+        } finally {
+            shard.shutDown();
         }
-    } 
+        return results;
+    }
     
     /**
-     * Constructor
+     * Validate the dataset-scoped rules on one dataset and the resources
+     * it refers to.
      * 
-     * @param input input file or URL
-     * @param sw simple result writer
+     * @param dataset dataset
+     * @param covered receives the subjects of the triples of the dataset
+     * @param local dataset-scoped rules
+     * @param cols column names per rule, added when first found
+     * @param timedOut rules that timed out
+     * @param times evaluation time per rule
+     * @return violations per rule
+     * @throws IOException 
      */
-    public Validator(Path input, SimpleResultWriter sw) {
-        this.path = input;
+    private List<List<List<String>>> validateDataset(Resource dataset, Set<Resource> covered,
+                                        List<Rule> local, Map<Rule,List<String>> cols, 
+                                        Set<Rule> timedOut, AtomicLongArray times) 
+                                                                throws IOException {
+        Model m;
+        try (RepositoryConnection con = repo.getConnection()) {
+            m = Partitioner.closure(con, dataset);
+        }
+        covered.addAll(m.subjects());
+        return validateShard(m, dataset.stringValue(), local, cols, timedOut, times);
+    }
+    
+    /**
+     * Validate dataset-scoped rules per dataset, and the other rules on the 
+     * whole catalog, using a pool of threads.
+     * Each dataset is copied to its own small store. The resources not 
+     * referred to by any dataset are validated together afterwards, so the
+     * dataset-scoped rules check the same resources as on the whole catalog.
+     * Violations found in more than one dataset (e.g. a shared publisher) are
+     * only reported once.
+     * 
+     * @param rulesets rulesets
+     * @return number of violations
+     * @throws IOException 
+     */
+    private int validatePartitioned(List<Ruleset> rulesets) throws IOException {
+        int violations = 0;
+        
+        List<Rule> local = new ArrayList<>();
+        for (Ruleset ruleset: rulesets) {
+            for (Rule rule: ruleset.getRules()) {
+                if (rule.isDatasetScoped() && !rule.isProcedural() 
+                        && !streamed.containsKey(rule) 
+                        && (stats == null || stats.canMatch(rule))) {
+                    local.add(rule);
+                }
+            }
+        }
+        List<Resource> datasets;
+        try (RepositoryConnection con = repo.getConnection()) {
+            datasets = Partitioner.getDatasets(con);
+        }
+        LOG.info("Validating {} rules on {} datasets using {} threads", 
+                                        local.size(), datasets.size(), threads);
+        
+        Map<Rule,List<String>> cols = new ConcurrentHashMap<>();
+        Set<Rule> timedOut = ConcurrentHashMap.newKeySet();
+        AtomicLongArray times = new AtomicLongArray(local.size());
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Map<Rule,Future<Integer>> global = new HashMap<>();
+            Map<Rule,ResultBuffer> buffers = new HashMap<>();
+            for (Ruleset ruleset: rulesets) {
+                for (Rule rule: ruleset.getRules()) {
+                    if (local.contains(rule)) {
+                        continue;
+                    }
+                    ResultBuffer buf = new ResultBuffer();
+                    buffers.put(rule, buf);
+                    global.put(rule, pool.submit(() -> {
+                        try (RepositoryConnection con = repo.getConnection()) {
+                            return validateAny(con, rule, buf);
+                        }
+                    }));
+                }
+            }
+            Set<Resource> covered = ConcurrentHashMap.newKeySet();
+            List<Future<List<List<List<String>>>>> shards = new ArrayList<>();
+            for (Resource dataset: datasets) {
+                shards.add(pool.submit(() -> 
+                        validateDataset(dataset, covered, local, cols, timedOut, times)));
+            }
+            // resources not referred to by any dataset, or all if there are none
+            for (Future<List<List<List<String>>>> shard: shards) {
+                shard.get();
+            }
+            Model rest;
+            try (RepositoryConnection con = repo.getConnection()) {
+                rest = Partitioner.remainder(con, covered);
+            }
+            LOG.info("{} triples not part of a dataset", rest.size());
+            if (!rest.isEmpty()) {
+                shards.add(pool.submit(() -> 
+                        validateShard(rest, "remainder", local, cols, timedOut, times)));
+            }
+            
+            for (Ruleset ruleset: rulesets) {
+                sw.startSection(ruleset.getName());
+                for (Rule rule: ruleset.getRules()) {
+                    int i = local.indexOf(rule);
+                    if (i < 0) {
+                        violations += global.get(rule).get();
+                        buffers.get(rule).replay(sw);
+                        continue;
+                    }
+                    Set<List<String>> rows = new LinkedHashSet<>();
+                    for (Future<List<List<List<String>>>> shard: shards) {
+                        rows.addAll(shard.get().get(i));
+                    }
+                    metrics.add(new RuleMetrics(rule, 0, times.get(i), -1, rows.size(), -1));
+                    violations += writeRows(rule, cols.getOrDefault(rule, List.of()), 
+                                new ArrayList<>(rows), timedOut.contains(rule), sw);
+                }
+                sw.endSection();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return violations;
+    }
+    
+    /**
+     * Get the named graphs, and the default graph if it is not empty
+     * 
+     * @param con RDF triplestore connection
+     * @return list of graphs, null for the default graph
+     */
+    private static List<Resource> getGraphs(RepositoryConnection con) {
+        List<Resource> graphs = new ArrayList<>();
+        if (con.hasStatement(null, null, null, false, (Resource) null)) {
+            graphs.add(null);
+        }
+        try (RepositoryResult<Resource> res = con.getContextIDs()) {
+            for (Resource graph: res) {
+                graphs.add(graph);
+            }
+        }
+        return graphs;
+    }
+    
+    /**
+     * Get the name of a graph, as used in the report
+     * 
+     * @param graph graph or null for the default graph
+     * @return name
+     */
+    private static String getGraphName(Resource graph) {
+        return (graph != null) ? graph.stringValue() : "default graph";
+    }
+    
+    /**
+     * Validate all rules on one graph, using a small in-memory store with 
+     * only the triples of that graph (in the default graph of that store).
+     * 
+     * @param graph graph or null for the default graph
+     * @param rulesets rulesets
+     * @param buf result buffer
+     * @param triples number of triples in the graph, set when loaded
+     * @return number of violations
+     * @throws IOException 
+     */
+    private int validateGraph(Resource graph, List<Ruleset> rulesets, ResultBuffer buf,
+                                                long[] triples) throws IOException {
+        int violations = 0;
+        String name = getGraphName(graph);
+        
+        Repository shard = new SailRepository(createMemoryStore());
+        try (RepositoryConnection con = repo.getConnection();
+            RepositoryConnection sc = shard.getConnection()) {
+            sc.begin();
+            try (RepositoryResult<Statement> res = 
+                            con.getStatements(null, null, null, false, graph)) {
+                for (Statement st: res) {
+                    sc.add(st.getSubject(), st.getPredicate(), st.getObject());
+                }
+            }
+            sc.commit();
+            triples[0] = sc.size();
+            LOG.debug("Validating graph {}, {} triples", name, triples[0]);
+            
+            for (Ruleset ruleset: rulesets) {
+                buf.startSection(name + ": " + ruleset.getName());
+                for (Rule rule: ruleset.getRules()) {
+                    violations += validateAny(sc, rule, buf);
+                }
+                buf.endSection();
+            }
+        } finally {
+            if (fusion != null) {
+                fusion.release(shard);
+            }
+            shard.shutDown();
+        }
+        return violations;
+    }
+    
+    /**
+     * Validate all rules within each graph, using a pool of threads, one 
+     * graph per thread.
+     * The report starts with the number of triples and violations per graph,
+     * followed by the results of the rulesets per graph.
+     * 
+     * @param rulesets rulesets
+     * @return number of violations
+     * @throws IOException 
+     */
+    private int validatePerGraph(List<Ruleset> rulesets) throws IOException {
+        int violations = 0;
+        
+        List<Resource> graphs;
+        try (RepositoryConnection con = repo.getConnection()) {
+            graphs = getGraphs(con);
+        }
+        LOG.info("Validating {} graphs using {} threads", graphs.size(), threads);
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            List<ResultBuffer> buffers = new ArrayList<>();
+            List<long[]> triples = new ArrayList<>();
+            for (Resource graph: graphs) {
+                ResultBuffer buf = new ResultBuffer();
+                long[] size = new long[1];
+                results.add(pool.submit(() -> validateGraph(graph, rulesets, buf, size)));
+                buffers.add(buf);
+                triples.add(size);
+            }
+            
+            sw.text("Number of graphs: " + graphs.size());
+            List<Integer> counts = new ArrayList<>();
+            for (int i = 0; i < graphs.size(); i++) {
+                counts.add(results.get(i).get());
+                sw.text("Graph " + getGraphName(graphs.get(i)) + ": " 
+                        + triples.get(i)[0] + " triples, " 
+                        + counts.get(i) + " violations");
+            }
+            for (int i = 0; i < graphs.size(); i++) {
+                buffers.get(i).replay(sw);
+                violations += counts.get(i);
+            }
+            // cost of a rule is the time needed for all graphs, not the last one
+            for (Ruleset ruleset: rulesets) {
+                for (Rule rule: ruleset.getRules()) {
+                    RuleMetrics m = metrics.get(rule);
+                    if (m != null && m.getTotal() > 0) {
+                        rule.setCost(m.getTotal());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return violations;
+    }
+    
+    /**
+     * Compare the current store with the store of the previous incremental run
+     * 
+     * @throws IOException 
+     */
+    private void compareWithPrevious() throws IOException {
+        Path prev = incremental.getPreviousStoreDir();
+        if (prev == null || !Files.isDirectory(prev)) {
+            LOG.info("No previous run, validating all rules");
+            return;
+        }
+        Repository old = new SailRepository(createNativeStore(prev));
+        try (RepositoryConnection oc = old.getConnection();
+            RepositoryConnection nc = repo.getConnection()) {
+            incremental.compare(oc, nc);
+        } finally {
+            old.shutDown();
+        }
+    }
+    
+    /**
+     * Load the triples once the rules are known.
+     * In streaming mode, find the rules that can be checked while loading 
+     * the triples, and load the triples into a store only if other rules need 
+     * it.
+     * In filter mode, only load the triples the rules can observe.
+     * 
+     * @param rulesets rulesets
+     * @return number of triples parsed, or -1 when the store was reused
+     * @throws IOException 
+     */
+    private long loadFor(List<Ruleset> rulesets) throws IOException {
+        boolean stream = streaming && !perGraph;
+        boolean needStore = !stream;
+        if (stream) {
+            for (Ruleset ruleset: rulesets) {
+                for (Rule rule: ruleset.getRules()) {
+                    if (!streamed.containsKey(rule)) {
+                        TripleRule triple = TripleRule.create(rule);
+                        if (triple != null) {
+                            streamed.put(rule, triple);
+                        } else {
+                            needStore = true;
+                        }
+                    }
+                }
+            }
+            LOG.info("{} rules can be checked while loading", streamed.size());
+        }
+        
+        if (filter) {
+            footprint = Footprint.of(rulesets);
+            if (footprint.isComplete()) {
+                LOG.info("Rules can observe any triple, loading all triples");
+                footprint = null;
+            } else {
+                LOG.info("Only loading triples with {}", footprint);
+            }
+        }
+        
+        if (needStore && !lint) {
+            LOG.debug("Initialize repository");
+            repo = new SailRepository(createSail());
+        }
+        
+        StreamingChecker checker = new StreamingChecker(new ArrayList<>(streamed.values()));
+        if (!load(checker)) {
+            streamed.clear();
+            return -1;
+        }
+        return checker.getCount();
+    }
+    
+    /**
+     * Validates RDF triples from input stream against rulesets
+     *
+     * @param rulesets directory or built-in set(s) containing SPARQL rules to validate
+     * @return number of violations
+     * @throws IOException 
+     */
+    public int validate(String[] rulesets) throws IOException {
+        return validate(Ruleset.read(rulesets));
+    }
+    
+    /**
+     * Prepare validating the rules of the rulesets: load the input file when
+     * streaming or filtering, and reset the counters of the previous run.
+     * 
+     * @param rulesets rulesets containing the rules to validate
+     * @return number of triples parsed while loading, or -1 if already loaded
+     * @throws IOException 
+     */
+    public long prepare(List<Ruleset> rulesets) throws IOException {
+        streamed.clear();
+        metrics.clear();
+        metrics.setRulesets(rulesets);
+        timeouts.set(0);
+        violationsTaken.set(0);
+        deadline = (budget > 0) ? System.nanoTime() + TimeUnit.SECONDS.toNanos(budget) : 0;
+        long triples = (streaming || filter) ? loadFor(rulesets) : -1;
+        // scans cannot be interrupted, so no fusion when rules have a timeout
+        fusion = (fuse && repo != null && timeout == 0) ? RuleFusion.of(rulesets) : null;
+        if (incrementalDir != null && repo != null) {
+            compareWithPrevious();
+        }
+        return triples;
+    }
+    
+    /**
+     * Validate one rule of the rulesets passed to prepare, only writing the
+     * section of the rule, e.g. in a worker process.
+     * 
+     * @param rule rule
+     * @param w result writer
+     * @return number of violations
+     * @throws IOException 
+     */
+    public int validate(Rule rule, SimpleResultWriter w) throws IOException {
+        try (RepositoryConnection con = (repo != null) ? repo.getConnection() : null) {
+            return validateAny(con, rule, w);
+        }
+    }
+    
+    /**
+     * Get the number of triples in the store
+     * 
+     * @return number of triples, 0 if there is no store
+     */
+    public long size() {
+        if (repo == null) {
+            return 0;
+        }
+        try (RepositoryConnection con = repo.getConnection()) {
+            return con.size();
+        }
+    }
+    
+    /**
+     * Validates RDF triples from input stream against rulesets that were
+     * already read.
+     * The same rulesets can be used to validate multiple input files.
+     *
+     * @param rulesets rulesets containing SPARQL rules to validate
+     * @return number of violations
+     * @throws IOException 
+     */
+    public int validate(List<Ruleset> rulesets) throws IOException {
+        int violations = 0;
+        long triples = prepare(rulesets);
+        
+        try (RepositoryConnection con = (repo != null) ? repo.getConnection() : null) {
+            sw.start();
+        
+            sw.title("RDF Validation");
+            sw.text("File to validate: " + name);
+            if (con != null && footprint != null && triples >= 0) {
+                sw.text("Number of triples: " + triples);
+                sw.text("Number of triples loaded: " + con.size());
+            } else {
+                sw.text("Number of triples: " + (con != null ? con.size() : triples));
+            }
+            sw.text("Current time: " + new Date());
+            if (incremental != null && incremental.getPreviousStoreDir() != null) {
+                sw.text("Changes since previous run: " + incremental.getAdded() 
+                        + " triples added, " + incremental.getRemoved() + " removed");
+            }
+        
+            if (failFast) {
+                violations = validateFailFast(con, rulesets);
+            } else if (perGraph && con != null && incremental == null) {
+                violations = validatePerGraph(rulesets);
+            } else if (partition && con != null && incremental == null) {
+                violations = validatePartitioned(rulesets);
+            } else if (threads > 1 && con != null) {
+                violations = validateParallel(rulesets);
+            } else {
+                for (Ruleset ruleset: rulesets) {
+                    violations += validateSequential(con, ruleset);
+                }
+            }
+            
+            if (timeouts.get() > 0) {
+                sw.text("Number of rules timed out: " + timeouts.get());
+            }
+            metrics.setViolations(violations);
+            if (profile) {
+                metrics.writeSlowest(sw);
+            }
+        }
+        fusion = null;
+        
+        sw.text("Total number of violations: " + violations);
+
+        sw.end();
+        
+        if (incremental != null) {
+            incremental.save();
+        }
+        
+        return violations;
+    }
+    
+    /**
+     * Set the number of threads used for parsing large N-Triples and N-Quads 
+     * files.
+     * 
+     * @param loadThreads number of threads, 1 means sequential
+     */
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = Math.max(1, loadThreads);
+    }
+    
+    /**
+     * Set the number of threads used for validating the rules.
+     * 
+     * @param threads number of threads, 1 (default) means sequential
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Close repository
+     */
+    public void close() {
+        if (repo != null) {
+            LOG.debug("Shutdown repository");
+            repo.shutDown();
+            repo = null;
+        }
+    }
+    
+    /**
+     * Create an in-memory store, with time limits on queries
+     * 
+     * @return memory store
+     */
+    private static MemoryStore createMemoryStore() {
+        MemoryStore ms = new MemoryStore();
+        ms.setEvaluationStrategyFactory(
+                    new TimeLimitStrategyFactory(ms.getEvaluationStrategyFactory()));
+        return ms;
+    }
+    
+    /**
+     * Create an on-disk store, with time limits on queries
+     * 
+     * @param dir directory
+     * @return native store
+     */
+    private static NativeStore createNativeStore(Path dir) {
+        NativeStore ns = new NativeStore(dir.toFile(), NATIVE_INDEXES);
+        ns.setEvaluationStrategyFactory(
+                    new TimeLimitStrategyFactory(ns.getEvaluationStrategyFactory()));
+        return ns;
+    }
+    
+    /**
+     * Create the storage layer, in memory or on disk
+     * 
+     * @return sail
+     * @throws IOException 
+     */
+    private Sail createSail() throws IOException {
+        if (store.equals(STORE_MEMORY)) {
+            return createMemoryStore();
+        }
+        if (store.startsWith(STORE_NATIVE)) {
+            storeDir = Paths.get(store.substring(STORE_NATIVE.length()));
+            Files.createDirectories(storeDir);
+            LOG.info("Using native store in {}", storeDir);
+            return createNativeStore(storeDir);
+        }
+        throw new IOException("Unknown store type " + store);
+    }
+    
+    /**
+     * Get information about the input file, to check if an existing on-disk
+     * store can be reused.
+     * 
+     * @return properties
+     * @throws IOException 
+     */
+    private Properties getSourceInfo() throws IOException {
+        Properties info = new Properties();
+        info.setProperty("file", path.toAbsolutePath().toString());
+        info.setProperty("size", String.valueOf(Files.size(path)));
+        info.setProperty("modified", 
+                String.valueOf(Files.getLastModifiedTime(path).toMillis()));
+        info.setProperty("filter", footprint != null ? footprint.toString() : "all");
+        return info;
+    }
+    
+    /**
+     * Check if the on-disk store already contains the input file
+     * 
+     * @param con RDF triplestore connection
+     * @return true if the input file was already loaded
+     * @throws IOException 
+     */
+    private boolean isLoaded(RepositoryConnection con) throws IOException {
+        if (storeDir == null || path == null) {
+            return false;
+        }
+        Path file = storeDir.resolve(SOURCE_INFO);
+        if (!Files.exists(file) || con.isEmpty()) {
+            return false;
+        }
+        Properties info = new Properties();
+        try (BufferedReader r = Files.newBufferedReader(file)) {
+            info.load(r);
+        }
+        return info.equals(getSourceInfo());
+    }
+    
+    /**
+     * Write information about the input file to the on-disk store
+     * 
+     * @throws IOException 
+     */
+    private void writeSourceInfo() throws IOException {
+        Path file = storeDir.resolve(SOURCE_INFO);
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            getSourceInfo().store(w, "Source of the statements in this store");
+        }
+    }
+    
+    /**
+     * Parse the input file, or load the snapshot of an earlier run if the
+     * file is in the snapshot cache.
+     * On a cache miss, a new snapshot is saved while parsing.
+     * 
+     * @param handler handler receiving the triples
+     * @param vf value factory
+     * @throws IOException 
+     */
+    private void parse(RDFHandler handler, ValueFactory vf) throws IOException {
+        String key = (cache != null && path != null) ? SnapshotCache.key(path, format) : null;
+        if (key != null) {
+            try (InputStream snapshot = cache.get(key)) {
+                if (snapshot != null) {
+                    RDFParser parser = Rio.createParser(RDFFormat.BINARY, vf);
+                    parser.setRDFHandler(handler);
+                    parser.parse(snapshot, BASE_URI);
+                    return;
+                }
+            }
+        }
+        if (path != null && loadThreads > 1 && ParallelNTriplesLoader.canLoad(path, format)) {
+            ParallelNTriplesLoader loader = 
+                            new ParallelNTriplesLoader(path, format, vf, loadThreads);
+            if (key == null) {
+                loader.parse(handler);
+            } else {
+                cache.put(key, snapshot -> loader.parse(new RDFHandlerWrapper(snapshot, handler)));
+            }
+            return;
+        }
+        if (key == null) {
+            parseInput(handler, vf);
+        } else {
+            cache.put(key, snapshot -> parseInput(new RDFHandlerWrapper(snapshot, handler), vf));
+        }
+    }
+    
+    /**
+     * Parse the input file, optionally checking triple-local rules, and add 
+     * the triples to the store (if any).
+     * An on-disk store is emptied first, changes are written directly to disk 
+     * instead of being kept in memory until the end of the transaction.
+     * 
+     * @param checker streaming checker or null
+     * @return true if the triples were passed to the checker
+     * @throws IOException 
+     */
+    private boolean load(StreamingChecker checker) throws IOException {
+        if (repo == null) {
+            LOG.info("Checking triples without loading them into a store");
+            long start = System.nanoTime();
+            parse(checker, SimpleValueFactory.getInstance());
+            long time = System.nanoTime() - start;
+            metrics.setLoad(time, checker.getCount(), getInputSize());
+            LOG.info("{} triples checked in {} ms", checker.getCount(), time / 1_000_000);
+            return true;
+        }
+        
+        boolean empty;
+        stats = null;
+        try (RepositoryConnection con = repo.getConnection()) {
+            if (isLoaded(con)) {
+                LOG.info("Reusing {} triples already in store", con.size());
+                return false;
+            }
+            
+            LOG.debug("Adding triples");
+            long start = System.nanoTime();
+            try {
+                if (storeDir != null) {
+                    Files.deleteIfExists(storeDir.resolve(SOURCE_INFO));
+                    con.begin(IsolationLevels.NONE);
+                    con.clear();
+                } else {
+                    con.begin();
+                }
+                Statistics counted = new Statistics();
+                RDFHandler inserter = counted.count(new RDFInserter(con));
+                if (checker != null) {
+                    checker.setNext(footprint != null ? footprint.filter(inserter) : inserter);
+                    parse(checker, con.getValueFactory());
+                } else {
+                    parse(inserter, con.getValueFactory());
+                }
+                con.commit();
+                stats = counted;
+                if (storeDir != null && path != null) {
+                    writeSourceInfo();
+                }
+            } catch (RepositoryException cve) {
+                LOG.error("Error adding triples", cve);
+            }
+            long time = System.nanoTime() - start;
+            metrics.setLoad(time, (checker != null) ? checker.getCount() : con.size(), 
+                            getInputSize());
+            LOG.info("{} triples loaded in {} ms", con.size(), time / 1_000_000);
+            empty = con.isEmpty();
+        }
+        
+        if(empty) {
+            LOG.error("No statements loaded");
+            close();
+        }
+        return checker != null;
+    }
+    
+    /**
+     * Get the size of the input file
+     * 
+     * @return size in bytes or -1 when reading from a stream
+     * @throws IOException 
+     */
+    private long getInputSize() throws IOException {
+        return (path != null) ? Files.size(path) : -1;
+    }
+    
+    /**
+     * Parse the input file, URL or stream, which can be compressed
+     * 
+     * @param handler handler receiving the triples
+     * @param vf value factory
+     * @throws IOException 
+     */
+    private void parseInput(RDFHandler handler, ValueFactory vf) throws IOException {
+        if (url != null) {
+            InputParser.parse(url, format, vf, handler);
+            return;
+        }
+        try (InputStream is = (path != null) ? Files.newInputStream(path) : in) {
+            InputParser.parse(is, name, format, vf, handler);
+        }
+    }
+    
+    /**
+     * Initialize repository and load triples.
+     * In streaming or filter mode, loading is delayed until the rules are known.
+     * 
+     * @throws IOException 
+     */
+    public void init() throws IOException {
+        if (incrementalDir != null) {
+            incremental = Incremental.open(incrementalDir);
+            store = STORE_NATIVE + incremental.getStoreDir();
+        }
+        if (format == null && path != null) {
+            format = InputParser.getFormat(path.getFileName().toString());
+        }
+        
+        if (streaming || filter) {
+            return;
+        }
+        LOG.debug("Initialize repository");
+        repo = new SailRepository(createSail());
+        load(null);
+    } 
+    
+    /**
+     * Load the input file again, replacing the triples in the store.
+     * Results kept in memory are discarded.
+     * 
+     * @throws IOException 
+     */
+    public void reload() throws IOException {
+        if (incremental != null && incrementalDir == null) {
+            incremental = Incremental.inMemory();
+        }
+        if (repo == null) {
+            init();
+            return;
+        }
+        try (RepositoryConnection con = repo.getConnection()) {
+            con.clear();
+        }
+        load(null);
+    }
+    
+    /**
+     * Check triple-local rules while parsing the input file, before
+     * adding the triples to the store. 
+     * Only rules that need a store are validated using the store, if there are
+     * none then the triples are not stored at all.
+     * 
+     * @param streaming true to check rules while parsing
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    /**
+     * Only validate the rules that can be checked while parsing, and skip
+     * all rules that need a store.
+     * This implies streaming mode.
+     * 
+     * @param lint true to skip rules needing a store
+     */
+    public void setLint(boolean lint) {
+        this.lint = lint;
+        if (lint) {
+            this.streaming = true;
+        }
+    }
+    
+    /**
+     * Only load the triples with predicates and classes the rules can observe.
+     * All triples are loaded when a rule uses an unrestricted variable as 
+     * predicate.
+     * 
+     * @param filter true to filter triples while loading
+     */
+    public void setFilter(boolean filter) {
+        this.filter = filter;
+    }
+    
+    /**
+     * Set the maximum number of violations of all rules.
+     * Rules are not validated anymore when the maximum is reached.
+     * 
+     * @param maxViolations maximum number, 0 for no maximum
+     */
+    public void setMaxViolations(int maxViolations) {
+        this.maxViolations = Math.max(0, maxViolations);
+    }
+    
+    /**
+     * Set the maximum number of violations per rule.
+     * The evaluation of a rule is stopped when the maximum is reached.
+     * 
+     * @param maxRuleViolations maximum number, 0 for no maximum
+     */
+    public void setMaxRuleViolations(int maxRuleViolations) {
+        this.maxRuleViolations = Math.max(0, maxRuleViolations);
+    }
+    
+    /**
+     * Stop at the first violation, validating the cheapest rules first.
+     * 
+     * @param failFast true to stop at the first violation
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+    
+    /**
+     * Keep the results of the rules in memory when validating again, e.g. in 
+     * watch mode, so only new or modified rules are validated.
+     * The results are discarded when the input is reloaded.
+     * 
+     * @param keep true to keep the results
+     */
+    public void setKeepResults(boolean keep) {
+        this.incremental = keep ? Incremental.inMemory() : null;
+    }
+    
+    /**
+     * Set the writer for the next report
+     * 
+     * @param sw result writer
+     */
+    public void setWriter(SimpleResultWriter sw) {
+        this.sw = sw;
+    }
+    
+    /**
+     * Keep the store and the results in a directory, and only validate the 
+     * rules again that can observe the changes since the previous run.
+     * Uses an on-disk store, and validates all rules per store.
+     * 
+     * @param dir state directory
+     */
+    public void setIncremental(Path dir) {
+        this.incrementalDir = dir;
+    }
+    
+    /**
+     * Validate all rules within each named graph (and the default graph)
+     * separately, graphs in parallel using the number of threads.
+     * Rules are not checked while loading in this mode.
+     * 
+     * @param perGraph true to validate per graph
+     */
+    public void setPerGraph(boolean perGraph) {
+        this.perGraph = perGraph;
+    }
+    
+    /**
+     * Validate rules checking for a missing property of the same class in
+     * one scan over the instances of that class (default), instead of 
+     * querying the store once per rule.
+     * 
+     * @param fuse false to query the store for each rule
+     */
+    public void setFusion(boolean fuse) {
+        this.fuse = fuse;
+    }
+    
+    /**
+     * Validate rules with a "# scope: dataset" line per dataset, each dataset
+     * in its own small in-memory store.
+     * Combined with a native store, memory usage depends on the largest 
+     * dataset instead of the whole catalog.
+     * 
+     * @param partition true to validate per dataset
+     */
+    public void setPartition(boolean partition) {
+        this.partition = partition;
+    }
+    
+    /**
+     * Set the default timeout of a rule.
+     * Rules exceeding their timeout are cancelled and reported as timed out.
+     * 
+     * @param timeout timeout in seconds, 0 (default) means no timeout
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = Math.max(0, timeout);
+    }
+    
+    /**
+     * Set the total time budget for validating all rules.
+     * Rules are cancelled when the budget runs out, remaining rules are not
+     * validated.
+     * 
+     * @param budget budget in seconds, 0 (default) means no budget
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(0, budget);
+    }
+    
+    /**
+     * Add a section with the slowest rules to the report
+     * 
+     * @param profile true to add the section
+     */
+    public void setMetrics(boolean profile) {
+        this.profile = profile;
+    }
+    
+    /**
+     * Get the metrics of loading and validating
+     * 
+     * @return metrics
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Use a cache of binary snapshots, so the same input file does not have to
+     * be parsed again on later runs.
+     * 
+     * @param cache snapshot cache or null
+     */
+    public void setCache(SnapshotCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * Set the type of store: "memory" (default) or "native:" followed by
+     * a directory.
+     * A native store can be reused on later runs with the same input file.
+     * 
+     * @param store type of store
+     */
+    public void setStore(String store) {
+        this.store = store;
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param input input file or URL
+     * @param sw simple result writer
+     */
+    public Validator(Path input, SimpleResultWriter sw) {
+        this.path = input;
+        this.in = null;
+        this.url = null;
+        this.name = input.toString();
+        this.sw = sw;
+    }
+    
+    /**
+     * Constructor for validating RDF downloaded from a HTTP(S) URL.
+     * 
+     * @param url URL
+     * @param sw simple result writer
+     */
+    public Validator(URI url, SimpleResultWriter sw) {
+        this.path = null;
+        this.in = null;
+        this.url = url;
+        this.name = url.toString();
+        this.sw = sw;
+    }
+    
+    /**
+     * Constructor for validating RDF from a stream, e.g. an upload.
+     * The stream can only be validated once.
+     * 
+     * @param in input stream
+     * @param format RDF format of the stream
+     * @param name name of the input, used in the report
+     * @param sw simple result writer
+     */
+    public Validator(InputStream in, RDFFormat format, String name, 
+                                                    SimpleResultWriter sw) {
+        this.path = null;
+        this.in = in;
+        this.url = null;
+        this.format = format;
+        this.name = name;
         this.sw = sw;
     }
 }
@@ -0,0 +1,306 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.rdf4j.common.exception.RDF4JException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watch the input file and the rule directories, and validate again when 
+ * they change, keeping the triples loaded.
+ * Only new or modified rules are validated, the input file is only loaded 
+ * again when it changes.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class Watcher {
+    private final static Logger LOG = LoggerFactory.getLogger(Watcher.class);
+    
+    private final static long SETTLE = 200;
+    private final static String TMP = ".validator-tmp";
+    
+    private final Path input;
+    private final String[] rules;
+    private final Path output;
+    private final List<ReportFormat> formats;
+    private final int maxRows;
+    private final Validator validator;
+    
+    private final Map<WatchKey,Path> keys = new HashMap<>();
+    private final Set<String> outputs = new HashSet<>();
+    private Map<String,Rule> previous = new HashMap<>();
+    
+    /**
+     * Check if a file name is a temporary or hidden file, e.g. created by an 
+     * editor
+     * 
+     * @param name file name
+     * @return true if the file should be ignored
+     */
+    private static boolean isHidden(String name) {
+        return name.startsWith(".") || name.endsWith("~") || name.endsWith(".swp");
+    }
+    
+    /**
+     * Check if a file is one of the reports (or a directory with pages)
+     * written by the previous validation
+     * 
+     * @param dir directory
+     * @param name file name
+     * @return true if the file is written by the validator
+     */
+    private boolean isOutput(Path dir, String name) {
+        return dir.equals(output.toAbsolutePath().getParent()) && outputs.contains(name);
+    }
+    
+    /**
+     * Delete a directory and its contents
+     * 
+     * @param dir directory
+     * @throws IOException 
+     */
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p: (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+    
+    /**
+     * Read the rulesets again, keeping the rules of files that did not 
+     * change, so their state (e.g. SHACL shapes store, measured time) is kept.
+     * 
+     * @return rulesets
+     * @throws IOException 
+     */
+    private List<Ruleset> readRules() throws IOException {
+        Map<String,Rule> current = new HashMap<>();
+        List<Ruleset> rulesets = new ArrayList<>();
+        for (Ruleset ruleset: Ruleset.read(rules)) {
+            List<Rule> list = new ArrayList<>();
+            for (Rule rule: ruleset.getRules()) {
+                String key = ruleset.getName() + "\n" + rule.getName() + "\n" + rule.getQuery();
+                Rule prev = previous.get(key);
+                list.add((prev != null) ? prev : rule);
+                current.put(key, (prev != null) ? prev : rule);
+            }
+            rulesets.add(new Ruleset(ruleset.getName(), list));
+        }
+        previous = current;
+        return rulesets;
+    }
+    
+    /**
+     * Validate the rules and write the report(s) to a temporary directory,
+     * then move them to the output directory, so the report is never 
+     * partially written.
+     * 
+     * @throws IOException 
+     */
+    private void validate() throws IOException {
+        long start = System.currentTimeMillis();
+        Path dir = output.toAbsolutePath().resolveSibling(TMP);
+        delete(dir);
+        Files.createDirectories(dir);
+        
+        SimpleResultWriter w = ReportFormat.create(dir.resolve(output.getFileName()), 
+                                                                formats, maxRows);
+        validator.setWriter(w);
+        int violations = -1;
+        try {
+            violations = validator.validate(readRules());
+        } catch (IOException | RDF4JException e) {
+            LOG.error("Validation failed {}", e.getMessage());
+        } finally {
+            // no-op when the report was completed
+            w.close();
+        }
+        if (violations < 0) {
+            delete(dir);
+            return;
+        }
+        
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            s.forEach(files::add);
+        }
+        for (Path file: files) {
+            outputs.add(file.getFileName().toString());
+            Path target = output.toAbsolutePath().resolveSibling(file.getFileName());
+            if (Files.isDirectory(file)) {
+                delete(target);
+                Files.move(file, target);
+            } else {
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, 
+                                            StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        delete(dir);
+        LOG.info("Validated in {} ms, {} violations, report written to {}", 
+                    System.currentTimeMillis() - start, violations, output);
+    }
+    
+    /**
+     * Register a directory with the watch service
+     * 
+     * @param ws watch service
+     * @param dir directory
+     * @throws IOException 
+     */
+    private void register(WatchService ws, Path dir) throws IOException {
+        if (!keys.containsValue(dir)) {
+            keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            LOG.info("Watching {}", dir);
+        }
+    }
+    
+    /**
+     * Wait for changes and validate again, until interrupted
+     * 
+     * @throws IOException 
+     */
+    public void run() throws IOException {
+        Path inputDir = input.toAbsolutePath().getParent();
+        List<Path> ruleDirs = new ArrayList<>();
+        for (String rule: rules) {
+            if (!rule.startsWith(Ruleset.BUILTIN)) {
+                ruleDirs.add(Path.of(rule).toAbsolutePath());
+            }
+        }
+        
+        validator.init();
+        validate();
+        
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            register(ws, inputDir);
+            for (Path dir: ruleDirs) {
+                register(ws, dir);
+            }
+            
+            while (true) {
+                boolean reload = false;
+                boolean changed = false;
+                // collect the events of an editor saving several files at once
+                WatchKey key = ws.take();
+                while (key != null) {
+                    Path dir = keys.get(key);
+                    for (WatchEvent<?> ev: key.pollEvents()) {
+                        if (ev.kind() == OVERFLOW) {
+                            reload = true;
+                            continue;
+                        }
+                        String name = ev.context().toString();
+                        if (isHidden(name) || isOutput(dir, name)) {
+                            continue;
+                        }
+                        if (dir.equals(inputDir) && name.equals(input.getFileName().toString())) {
+                            reload = true;
+                        }
+                        if (ruleDirs.contains(dir)) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    key = ws.poll(SETTLE, TimeUnit.MILLISECONDS);
+                }
+                
+                if (reload) {
+                    LOG.info("Input file changed, loading {}", input);
+                    try {
+                        validator.reload();
+                    } catch (IOException | RDF4JException e) {
+                        LOG.error("Could not load {}", e.getMessage());
+                        continue;
+                    }
+                }
+                if (reload || changed) {
+                    try {
+                        validate();
+                    } catch (IOException e) {
+                        LOG.error("Could not write report {}", e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            validator.close();
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param input input file
+     * @param rules rule directories or built-in sets
+     * @param output report file
+     * @param formats report formats
+     * @param maxRows maximum number of rows per table in an HTML report
+     * @param validator validator for the input file, configured but not initialized
+     */
+    public Watcher(Path input, String[] rules, Path output, List<ReportFormat> formats, 
+                                                int maxRows, Validator validator) {
+        this.input = input;
+        this.rules = rules;
+        this.output = output;
+        this.formats = formats;
+        this.maxRows = maxRows;
+        this.validator = validator;
+        validator.setStreaming(false);
+        validator.setFilter(false);
+        validator.setKeepResults(true);
+    }
+}
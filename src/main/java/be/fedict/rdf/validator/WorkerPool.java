@@ -0,0 +1,521 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates in a number of local worker processes (JVMs), each with its own 
+ * heap, e.g. for very large harvests. 
+ * Jobs (input files or rules) are divided among the workers, which send 
+ * their results back over a socket on the loopback interface.
+ * When a worker crashes (e.g. out of memory), only the jobs of that worker 
+ * that were not completed are given to a new worker.
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class WorkerPool {
+    private final static Logger LOG = LoggerFactory.getLogger(WorkerPool.class);
+    
+    public final static String WORKER = "--worker";
+    private final static String TOKEN = "VALIDATOR_WORKER_TOKEN";
+    private final static String WORKER_ID = "VALIDATOR_WORKER_ID";
+    
+    /**
+     * Job for a worker, e.g. one input file or one rule
+     */
+    public static class Job {
+        private final int id;
+        private final String line;
+        private final ResultBuffer buffer = new ResultBuffer();
+        private List<String> result = List.of();
+        private int violations = 0;
+        private boolean done = false;
+        private int crashes = 0;
+        private String error;
+        
+        /**
+         * Get the result sent by the worker, other than the report
+         * 
+         * @return values
+         */
+        public List<String> getResult() {
+            return result;
+        }
+        
+        /**
+         * Get the number of violations
+         * 
+         * @return number of violations
+         */
+        public int getViolations() {
+            return violations;
+        }
+        
+        /**
+         * Check if the job was completed by a worker
+         * 
+         * @return true if completed
+         */
+        public boolean isDone() {
+            return done;
+        }
+        
+        /**
+         * Get the reason why the job was not completed
+         * 
+         * @return reason or null
+         */
+        public String getError() {
+            return error;
+        }
+        
+        /**
+         * Write the report of the job to a result writer
+         * 
+         * @param w result writer
+         * @throws IOException 
+         */
+        public void replay(SimpleResultWriter w) throws IOException {
+            buffer.replay(w);
+        }
+        
+        /**
+         * Constructor
+         * 
+         * @param id job number
+         * @param line description of the job for the worker
+         */
+        private Job(int id, String line) {
+            this.id = id;
+            this.line = line;
+        }
+    }
+    
+    /**
+     * Validation done by a worker for each job
+     */
+    public interface Task {
+        /**
+         * Execute a job
+         * 
+         * @param line description of the job
+         * @param out pipe to the coordinator
+         * @return number of violations
+         * @throws IOException 
+         */
+        public int run(String line, PipeWriter out) throws IOException;
+    }
+    
+    private final List<String> command;
+    private final int workers;
+    private int retries = 2;
+    private ResultBuffer header;
+    
+    /**
+     * Get the command starting a worker process, using the same JVM and 
+     * classpath as this process.
+     * 
+     * @param args command line arguments of the worker
+     * @return command
+     */
+    private static List<String> getCommand(List<String> args) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg: ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!arg.startsWith("-XX:ArchiveClassesAtExit") 
+                    && !arg.startsWith("-agentlib") && !arg.startsWith("-javaagent")) {
+                cmd.add(arg);
+            }
+        }
+        // a worker running out of memory must stop, so its jobs can be retried
+        cmd.add("-XX:+ExitOnOutOfMemoryError");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(Main.class.getName());
+        cmd.addAll(args);
+        cmd.add(WORKER);
+        return cmd;
+    }
+    
+    /**
+     * Wait for a worker process to connect
+     * 
+     * @param server server socket
+     * @param p worker process
+     * @return socket or null if the worker stopped before connecting
+     * @throws IOException 
+     */
+    private static Socket accept(ServerSocket server, Process p) throws IOException {
+        server.setSoTimeout(1000);
+        while (p.isAlive()) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException ste) {
+                // check if the worker is still running
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Start a worker process for the jobs and read its results
+     * 
+     * @param id number of the slice, passed to the worker
+     * @param todo jobs
+     * @param current set to the job the worker was busy with when it stopped
+     * @return exit status of the worker
+     * @throws IOException 
+     */
+    private int runProcess(int id, List<Job> todo, Job[] current) throws IOException {
+        Map<Integer,Job> jobs = new HashMap<>();
+        for (Job job: todo) {
+            jobs.put(job.id, job);
+        }
+        
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            String token = UUID.randomUUID().toString();
+            List<String> cmd = new ArrayList<>(command);
+            cmd.add(String.valueOf(server.getLocalPort()));
+            ProcessBuilder pb = new ProcessBuilder(cmd).inheritIO()
+                                    .redirectInput(ProcessBuilder.Redirect.PIPE);
+            pb.environment().put(TOKEN, token);
+            pb.environment().put(WORKER_ID, String.valueOf(id));
+            Process p = pb.start();
+            try {
+                try (Writer w = new BufferedWriter(
+                        new OutputStreamWriter(p.getOutputStream(), StandardCharsets.UTF_8))) {
+                    for (Job job: todo) {
+                        w.write(job.id + "\t" + job.line + "\n");
+                    }
+                } catch (IOException ioe) {
+                    LOG.warn("Could not send jobs to worker {}", ioe.getMessage());
+                }
+                
+                ResultBuffer head = new ResultBuffer();
+                try (Socket socket = accept(server, p);
+                        DataInputStream in = (socket != null) 
+                            ? new DataInputStream(new BufferedInputStream(socket.getInputStream()))
+                            : null) {
+                    if (in != null) {
+                        PipeWriter.read(in, head, new PipeWriter.Listener() {
+                            private boolean valid = false;
+
+                            @Override
+                            public void hello(String t) throws IOException {
+                                valid = token.equals(t);
+                                if (!valid) {
+                                    throw new IOException("Invalid worker token");
+                                }
+                            }
+
+                            @Override
+                            public SimpleResultWriter job(int id) {
+                                current[0] = jobs.get(id);
+                                current[0].buffer.clear();
+                                return current[0].buffer;
+                            }
+
+                            @Override
+                            public void result(int id, List<String> values) {
+                                jobs.get(id).result = values;
+                            }
+
+                            @Override
+                            public void done(int id, int violations) {
+                                Job job = jobs.get(id);
+                                job.violations = violations;
+                                job.done = valid;
+                                current[0] = null;
+                            }
+                        });
+                    }
+                } catch (IOException ioe) {
+                    LOG.warn("Could not read results of worker {}", ioe.getMessage());
+                    p.destroy();
+                }
+                
+                synchronized (this) {
+                    if (header == null && !head.isEmpty()) {
+                        header = head;
+                    }
+                }
+                return p.waitFor();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for worker");
+            } finally {
+                p.destroyForcibly();
+            }
+        }
+    }
+    
+    /**
+     * Execute the jobs of a slice in a worker process, starting a new worker 
+     * for the remaining jobs when a worker crashes.
+     * A job that crashed the worker more than the number of retries is not
+     * retried again.
+     * 
+     * @param id number of the slice
+     * @param slice jobs
+     * @throws IOException 
+     */
+    private void runSlice(int id, List<Job> slice) throws IOException {
+        List<Job> todo = new ArrayList<>(slice);
+        int failures = 0;
+        
+        while (!todo.isEmpty()) {
+            Job[] current = { null };
+            int status = runProcess(id, todo, current);
+            todo.removeIf(Job::isDone);
+            if (todo.isEmpty()) {
+                break;
+            }
+            String error = "worker exited with status " + status;
+            Job crashed = current[0];
+            if (crashed != null) {
+                if (++crashed.crashes > retries) {
+                    LOG.error("Job {} failed: {}", crashed.line, error);
+                    crashed.error = error;
+                    todo.remove(crashed);
+                }
+            } else if (++failures > retries) {
+                LOG.error("Worker failed {} times: {}", failures, error);
+                for (Job job: todo) {
+                    job.error = error;
+                }
+                break;
+            }
+            if (!todo.isEmpty()) {
+                LOG.warn("Worker exited with status {}, retrying {} jobs", status, todo.size());
+            }
+        }
+    }
+    
+    /**
+     * Execute the jobs, dividing them among the workers
+     * 
+     * @param lines description of each job
+     * @return jobs, in the same order
+     * @throws IOException 
+     */
+    public List<Job> run(List<String> lines) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (String line: lines) {
+            jobs.add(new Job(jobs.size(), line));
+        }
+        int n = Math.max(1, Math.min(workers, jobs.size()));
+        List<List<Job>> slices = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            slices.add(new ArrayList<>());
+        }
+        for (Job job: jobs) {
+            slices.get(job.id % n).add(job);
+        }
+        LOG.info("Validating {} jobs in {} worker processes", jobs.size(), n);
+        
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int id = i;
+            tasks.add(() -> { 
+                runSlice(id, slices.get(id));
+                return null;
+            });
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(n);
+        try {
+            for (Future<Void> f: exec.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for workers");
+        } catch (ExecutionException ee) {
+            throw new IOException(ee.getCause().getMessage(), ee.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+        return jobs;
+    }
+    
+    /**
+     * Validate the rules of the rulesets in the worker processes, each worker
+     * loading the input file and validating some of the rules. 
+     * The report has the same layout as a validation in one process.
+     * 
+     * @param name name of the input file
+     * @param rulesets rulesets
+     * @param sw result writer
+     * @return number of violations
+     * @throws IOException 
+     */
+    public int validateRules(String name, List<Ruleset> rulesets, SimpleResultWriter sw) 
+                                                                throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Ruleset ruleset: rulesets) {
+            for (Rule rule: ruleset.getRules()) {
+                lines.add(String.valueOf(lines.size()));
+            }
+        }
+        List<Job> jobs = run(lines);
+        
+        sw.start();
+        sw.title("RDF Validation");
+        sw.text("File to validate: " + name);
+        if (header != null) {
+            header.replay(sw);
+        }
+        sw.text("Current time: " + new Date());
+        sw.text("Number of worker processes: " + Math.min(workers, jobs.size()));
+        
+        int violations = 0;
+        int failed = 0;
+        int i = 0;
+        for (Ruleset ruleset: rulesets) {
+            sw.startSection(ruleset.getName());
+            for (Rule rule: ruleset.getRules()) {
+                Job job = jobs.get(i++);
+                if (job.isDone()) {
+                    job.replay(sw);
+                    violations += job.getViolations();
+                } else {
+                    failed++;
+                    sw.startSection(rule.getTitle());
+                    sw.code(rule.getQuery());
+                    sw.text("Not validated: " + job.getError());
+                    sw.endSection();
+                }
+            }
+            sw.endSection();
+        }
+        if (failed > 0) {
+            sw.text("Number of rules not validated: " + failed);
+        }
+        sw.text("Total number of violations: " + violations);
+        sw.end();
+        
+        return violations;
+    }
+    
+    /**
+     * Get the number of this worker process.
+     * Only one worker process runs at any time for a given number, so it can 
+     * be used to give each worker its own on-disk store or cache.
+     * 
+     * @return number of the worker, or -1 when not running as a worker
+     */
+    public static int getWorkerId() {
+        String id = System.getenv(WORKER_ID);
+        return (id != null) ? Integer.parseInt(id) : -1;
+    }
+    
+    /**
+     * Connect to the coordinator, in a worker process
+     * 
+     * @param port port of the coordinator on the loopback interface
+     * @return pipe to the coordinator
+     * @throws IOException 
+     */
+    public static PipeWriter connect(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        PipeWriter out = new PipeWriter(socket.getOutputStream());
+        out.hello(System.getenv(TOKEN));
+        return out;
+    }
+    
+    /**
+     * Execute the jobs read from standard input, in a worker process
+     * 
+     * @param out pipe to the coordinator
+     * @param task validation of one job
+     * @throws IOException 
+     */
+    public static void work(PipeWriter out, Task task) throws IOException {
+        List<String> lines;
+        try (BufferedReader in = new BufferedReader(
+                            new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            lines = in.lines().filter(l -> !l.isEmpty()).collect(Collectors.toList());
+        }
+        for (String line: lines) {
+            int tab = line.indexOf('\t');
+            int id = Integer.parseInt(line.substring(0, tab));
+            out.job(id);
+            out.done(id, task.run(line.substring(tab + 1), out));
+        }
+        out.close();
+    }
+    
+    /**
+     * Set the number of times a job is given to a new worker when it crashed
+     * a worker
+     * 
+     * @param retries number of retries (default 2)
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param workers number of worker processes
+     * @param args command line arguments of the workers
+     */
+    public WorkerPool(int workers, List<String> args) {
+        this.workers = Math.max(1, workers);
+        this.command = getCommand(args);
+    }
+}
@@ -0,0 +1,133 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compare the Java duplicate identifier rule with the SPARQL query it replaces
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class DuplicateIdentifierRuleTest {
+    private final static String RULE = "/dcatap11be/DatasetIdentifierDuplicate.txt";
+    private final static String CATALOG = 
+        "@prefix dct: <http://purl.org/dc/terms/> .\n" +
+        "@prefix ex: <http://example.org/> .\n" +
+        "ex:a dct:identifier \"x\" .\n" +
+        "ex:b dct:identifier \"x\" .\n" +
+        "ex:c dct:identifier \"x\" .\n" +
+        "ex:d dct:identifier \"y\" .\n" +
+        "ex:e dct:identifier \"y\", \"x\" .\n" +
+        "ex:f dct:identifier \"z\" .\n" +
+        "ex:g dct:identifier \"y\"@en .\n";
+    
+    private Repository repo;
+    
+    @BeforeEach
+    public void load() throws IOException {
+        repo = new SailRepository(new MemoryStore());
+        try (RepositoryConnection con = repo.getConnection()) {
+            con.add(new StringReader(CATALOG), Validator.BASE_URI, RDFFormat.TURTLE);
+        }
+    }
+    
+    @AfterEach
+    public void close() {
+        repo.shutDown();
+    }
+    
+    /**
+     * Read the rule file
+     * 
+     * @return contents
+     * @throws IOException 
+     */
+    private static String read() throws IOException {
+        try (InputStream in = DuplicateIdentifierRuleTest.class.getResourceAsStream(RULE)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Sort rows, so results can be compared regardless of their order
+     * 
+     * @param rows rows
+     * @return sorted rows
+     */
+    private static List<List<String>> sorted(List<List<String>> rows) {
+        List<List<String>> l = new ArrayList<>(rows);
+        Collections.sort(l, Comparator.comparing(List::toString));
+        return l;
+    }
+    
+    @Test
+    public void testSameAsQuery() throws IOException {
+        String text = read();
+        Rule java = Rule.read("DatasetIdentifierDuplicate.txt", text);
+        assertTrue(java.isProcedural());
+        
+        // the query shown in the report, after the @java line
+        int start = text.indexOf('\n', text.indexOf(Rule.JAVA));
+        Rule sparql = new Rule("DatasetIdentifierDuplicate.txt", text.substring(start));
+        
+        List<List<String>> expected = new ArrayList<>();
+        List<List<String>> actual = new ArrayList<>();
+        try (RepositoryConnection con = repo.getConnection()) {
+            try (TupleQueryResult res = sparql.prepare(con).evaluate()) {
+                for (BindingSet bs: res) {
+                    expected.add(List.of(bs.getValue("dataset").stringValue()));
+                }
+            }
+            java.getProcedural().validate(con, actual::add);
+        }
+        assertEquals(List.of("dataset"), java.getProcedural().getColumns());
+        // 3 datasets with "x" plus e, 2 with "y"
+        assertEquals(4 * 3 + 2 * 1, expected.size());
+        assertEquals(sorted(expected), sorted(actual));
+    }
+}
@@ -0,0 +1,289 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validate a changed input incrementally, and compare with a full validation
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class IncrementalTest {
+    private final static String PREFIXES = 
+        "PREFIX dcat: <http://www.w3.org/ns/dcat#>\n" +
+        "PREFIX dct: <http://purl.org/dc/terms/>\n" +
+        "PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n";
+    
+    // no changes to homepages or catalogs
+    private final static String UNTOUCHED = "# Catalog missing homepage\n" + PREFIXES +
+        "SELECT ?cat WHERE { ?cat a dcat:Catalog FILTER NOT EXISTS { ?cat foaf:homepage ?h } }";
+    // only looks at the triples of ?d
+    private final static String LOCAL = "# Dataset missing description\n" + PREFIXES +
+        "SELECT ?d WHERE { ?d a dcat:Dataset FILTER NOT EXISTS { ?d dct:description ?x } }";
+    // joins two subjects
+    private final static String NONLOCAL = "# Duplicate title\n" + PREFIXES +
+        "SELECT ?d ?t WHERE { ?d dct:title ?t . ?e dct:title ?t FILTER (?d != ?e) }";
+    
+    private final static String BEFORE = 
+        "@prefix dcat: <http://www.w3.org/ns/dcat#> .\n" +
+        "@prefix dct: <http://purl.org/dc/terms/> .\n" +
+        "@prefix ex: <http://example.org/> .\n" +
+        "ex:cat a dcat:Catalog ; dcat:dataset ex:d1, ex:d2, ex:d3, ex:d4 .\n" +
+        "ex:d1 a dcat:Dataset ; dct:title \"A\" ; dct:description \"one\" .\n" +
+        "ex:d2 a dcat:Dataset ; dct:title \"A\" .\n" +
+        "ex:d3 a dcat:Dataset ; dct:title \"B\" .\n" +
+        "ex:d4 a dcat:Dataset ; dct:title \"C\" ; dct:description \"four\" .\n";
+    private final static String AFTER = 
+        "@prefix dcat: <http://www.w3.org/ns/dcat#> .\n" +
+        "@prefix dct: <http://purl.org/dc/terms/> .\n" +
+        "@prefix ex: <http://example.org/> .\n" +
+        "ex:cat a dcat:Catalog ; dcat:dataset ex:d1, ex:d2, ex:d3, ex:d4, ex:d5 .\n" +
+        "ex:d1 a dcat:Dataset ; dct:title \"A\" .\n" +
+        "ex:d2 a dcat:Dataset ; dct:title \"B\" ; dct:description \"two\" .\n" +
+        "ex:d3 a dcat:Dataset ; dct:title \"C\" .\n" +
+        "ex:d4 a dcat:Dataset ; dct:title \"C\" ; dct:description \"four\" .\n" +
+        "ex:d5 a dcat:Dataset ; dct:title \"E\" .\n";
+    
+    @TempDir
+    public Path dir;
+    
+    /**
+     * Collects the rows of each rule of a report, by title
+     */
+    private static class Collector implements SimpleResultWriter {
+        private final Map<String,List<List<String>>> rows = new TreeMap<>();
+        private final List<String> texts = new ArrayList<>();
+        private String section;
+        
+        @Override
+        public void start() {
+        }
+        
+        @Override
+        public void end() {
+        }
+        
+        @Override
+        public void title(String title) {
+        }
+        
+        @Override
+        public void startSection(String title) {
+            section = title;
+        }
+        
+        @Override
+        public void endSection() {
+        }
+        
+        @Override
+        public void text(String text) {
+            texts.add(text);
+        }
+        
+        @Override
+        public void code(String code) {
+        }
+        
+        @Override
+        public void startTable(String title) {
+        }
+        
+        @Override
+        public void columnNames(List<String> names) {
+        }
+        
+        @Override
+        public void row(List<String> values) {
+            rows.computeIfAbsent(section, s -> new ArrayList<>()).add(values);
+        }
+        
+        @Override
+        public void endTable() {
+        }
+    }
+    
+    /**
+     * Sort rows, so results can be compared regardless of their order
+     * 
+     * @param rows rows
+     * @return sorted rows
+     */
+    private static List<List<String>> sorted(List<List<String>> rows) {
+        List<List<String>> l = new ArrayList<>(rows);
+        l.sort(Comparator.comparing(List::toString));
+        return l;
+    }
+    
+    /**
+     * Load Turtle in a new in-memory store
+     * 
+     * @param ttl Turtle
+     * @return repository
+     * @throws IOException 
+     */
+    private static Repository load(String ttl) throws IOException {
+        Repository repo = new SailRepository(new MemoryStore());
+        try (RepositoryConnection con = repo.getConnection()) {
+            con.add(new StringReader(ttl), Validator.BASE_URI, RDFFormat.TURTLE);
+        }
+        return repo;
+    }
+    
+    /**
+     * Evaluate the query of a rule on the whole store
+     * 
+     * @param con RDF triplestore connection
+     * @param rule rule
+     * @param cols list to add the column names to
+     * @return rows
+     */
+    private static List<List<String>> eval(RepositoryConnection con, Rule rule, 
+                                                                List<String> cols) {
+        List<List<String>> rows = new ArrayList<>();
+        try (TupleQueryResult res = rule.prepare(con).evaluate()) {
+            List<String> names = res.getBindingNames();
+            cols.addAll(names);
+            for (BindingSet bs: res) {
+                List<String> row = new ArrayList<>();
+                for (String name: names) {
+                    row.add(bs.getValue(name).stringValue());
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+    
+    /**
+     * Validate a file
+     * 
+     * @param file input file
+     * @param state incremental state directory or null for a full validation
+     * @return collected report
+     * @throws IOException 
+     */
+    private Collector validate(Path file, Path state) throws IOException {
+        Collector c = new Collector();
+        Validator validator = new Validator(file, c);
+        if (state != null) {
+            validator.setIncremental(state);
+        }
+        try {
+            validator.init();
+            validator.validate(Ruleset.read(new String[] { dir.resolve("rules").toString() }));
+        } finally {
+            validator.close();
+        }
+        return c;
+    }
+    
+    @Test
+    public void testRevalidate() throws IOException {
+        Rule untouched = new Rule("Untouched.txt", UNTOUCHED);
+        Rule local = new Rule("Local.txt", LOCAL);
+        Rule nonlocal = new Rule("NonLocal.txt", NONLOCAL);
+        
+        Repository before = load(BEFORE);
+        Repository after = load(AFTER);
+        try (RepositoryConnection prev = before.getConnection();
+                RepositoryConnection cur = after.getConnection()) {
+            Incremental inc = Incremental.inMemory();
+            Map<Rule,List<List<String>>> old = new HashMap<>();
+            for (Rule rule: List.of(untouched, local, nonlocal)) {
+                List<String> cols = new ArrayList<>();
+                old.put(rule, eval(prev, rule, cols));
+                inc.put(rule, cols, old.get(rule));
+            }
+            inc.save();
+            inc.compare(prev, cur);
+            
+            List<List<String>> rows = inc.revalidate(cur, untouched);
+            assertNotNull(rows);
+            assertEquals(old.get(untouched), rows);
+            assertFalse(rows.isEmpty());
+            
+            rows = inc.revalidate(cur, local);
+            assertNotNull(rows);
+            assertEquals(sorted(eval(cur, local, new ArrayList<>())), sorted(rows));
+            
+            assertNull(inc.revalidate(cur, nonlocal));
+        } finally {
+            before.shutDown();
+            after.shutDown();
+        }
+    }
+    
+    @Test
+    public void testSameAsFull() throws IOException {
+        Path rules = Files.createDirectories(dir.resolve("rules"));
+        Files.writeString(rules.resolve("Untouched.txt"), UNTOUCHED);
+        Files.writeString(rules.resolve("Local.txt"), LOCAL);
+        Files.writeString(rules.resolve("NonLocal.txt"), NONLOCAL);
+        
+        Path file = dir.resolve("feed.ttl");
+        Path state = dir.resolve("state");
+        Files.writeString(file, BEFORE);
+        validate(file, state);
+        
+        Files.writeString(file, AFTER);
+        Collector incremental = validate(file, state);
+        assertTrue(incremental.texts.stream().anyMatch(t -> t.startsWith("Changes since")));
+        Collector full = validate(file, null);
+        
+        assertEquals(full.rows.keySet(), incremental.rows.keySet());
+        for (String rule: full.rows.keySet()) {
+            assertEquals(sorted(full.rows.get(rule)), sorted(incremental.rows.get(rule)), rule);
+        }
+        assertEquals(3, full.rows.size());
+    }
+}
@@ -0,0 +1,222 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Download and parse RDF from a local HTTP server, checking compression,
+ * content type and format detection from the first bytes
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class InputParserTest {
+    private final static String NT = 
+        "<http://example.org/a> <http://purl.org/dc/terms/title> \"a\" .\n" +
+        "<http://example.org/b> <http://purl.org/dc/terms/title> \"b\" .\n";
+    private final static String TTL = 
+        "@prefix dct: <http://purl.org/dc/terms/> .\n" +
+        "<http://example.org/a> dct:title \"a\" .\n" +
+        "<http://example.org/b> dct:title \"b\" .\n";
+    private final static String RDFXML = 
+        "<?xml version=\"1.0\"?>\n" +
+        "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n" +
+        "         xmlns:dct=\"http://purl.org/dc/terms/\">\n" +
+        "  <rdf:Description rdf:about=\"http://example.org/a\"><dct:title>a</dct:title></rdf:Description>\n" +
+        "  <rdf:Description rdf:about=\"http://example.org/b\"><dct:title>b</dct:title></rdf:Description>\n" +
+        "</rdf:RDF>\n";
+    
+    private static HttpServer server;
+    
+    /**
+     * Serve a response on a path
+     * 
+     * @param path path on the server
+     * @param type content type
+     * @param body response body
+     */
+    private static void serve(String path, String type, byte[] body) {
+        server.createContext(path, ex -> {
+            ex.getResponseHeaders().set("Content-Type", type);
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(body);
+            }
+        });
+    }
+    
+    /**
+     * Compress a string with gzip
+     * 
+     * @param s string
+     * @return bytes
+     * @throws IOException 
+     */
+    private static byte[] gzip(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Compress a string with bzip2
+     * 
+     * @param s string
+     * @return bytes
+     * @throws IOException 
+     */
+    private static byte[] bzip2(String s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new BZip2CompressorOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Create a zip archive
+     * 
+     * @param entries file names and contents
+     * @return bytes
+     * @throws IOException 
+     */
+    private static byte[] zip(String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    @BeforeAll
+    public static void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serve("/plain.ttl", "application/octet-stream", TTL.getBytes(StandardCharsets.UTF_8));
+        serve("/data.nt.gz", "application/gzip", gzip(NT));
+        serve("/data.ttl.bz2", "application/x-bzip2", bzip2(TTL));
+        serve("/archive.zip", "application/zip", 
+                zip("a.nt", NT, "b.ttl", TTL, "readme.txt", "not RDF"));
+        serve("/typed", "application/rdf+xml", RDFXML.getBytes(StandardCharsets.UTF_8));
+        serve("/typed-gz", "text/turtle", gzip(TTL));
+        serve("/sniff-nt", "text/plain", NT.getBytes(StandardCharsets.UTF_8));
+        serve("/sniff-xml", "application/octet-stream", RDFXML.getBytes(StandardCharsets.UTF_8));
+        serve("/sniff-bz2", "application/octet-stream", bzip2(TTL));
+        server.createContext("/missing", ex -> {
+            ex.sendResponseHeaders(404, -1);
+            ex.close();
+        });
+        server.start();
+    }
+    
+    @AfterAll
+    public static void stop() {
+        server.stop(0);
+    }
+    
+    /**
+     * Download and parse a path from the test server
+     * 
+     * @param path path
+     * @return statements
+     * @throws IOException 
+     */
+    private static List<Statement> parse(String path) throws IOException {
+        URI url = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() 
+                                + ":" + server.getAddress().getPort() + path);
+        List<Statement> statements = new ArrayList<>();
+        InputParser.parse(url, null, SimpleValueFactory.getInstance(), 
+                            new StatementCollector(statements));
+        return statements;
+    }
+    
+    @Test
+    public void testExtension() throws IOException {
+        assertEquals(2, parse("/plain.ttl").size());
+    }
+    
+    @Test
+    public void testGzip() throws IOException {
+        assertEquals(2, parse("/data.nt.gz").size());
+    }
+    
+    @Test
+    public void testBzip2() throws IOException {
+        assertEquals(2, parse("/data.ttl.bz2").size());
+    }
+    
+    @Test
+    public void testZip() throws IOException {
+        assertEquals(4, parse("/archive.zip").size());
+    }
+    
+    @Test
+    public void testContentType() throws IOException {
+        assertEquals(2, parse("/typed").size());
+        assertEquals(2, parse("/typed-gz").size());
+    }
+    
+    @Test
+    public void testSniff() throws IOException {
+        assertEquals(2, parse("/sniff-nt").size());
+        assertEquals(2, parse("/sniff-xml").size());
+        assertEquals(2, parse("/sniff-bz2").size());
+    }
+    
+    @Test
+    public void testNotFound() {
+        assertThrows(IOException.class, () -> parse("/missing"));
+    }
+}
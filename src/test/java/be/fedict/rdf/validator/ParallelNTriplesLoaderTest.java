@@ -0,0 +1,171 @@
+/* Copyright (c) 2016, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.fedict.rdf.validator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.rio.ParserConfig;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compare the result of the parallel loader with a single parser
+ * 
+ * @author Bart Hanssens <bart.hanssens@fedict.be>
+ */
+public class ParallelNTriplesLoaderTest {
+    private final static ValueFactory VF = SimpleValueFactory.getInstance();
+    private final static int LINES = 5000;
+    
+    @TempDir
+    public Path dir;
+    
+    /**
+     * Write a file where the same blank nodes are used at the start and at the
+     * end, so they end up in different chunks
+     * 
+     * @param name file name
+     * @param quads true for N-Quads
+     * @return file
+     * @throws IOException 
+     */
+    private Path write(String name, boolean quads) throws IOException {
+        Path p = dir.resolve(name);
+        try (Writer w = Files.newBufferedWriter(p, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < LINES; i++) {
+                String subj = (i % 3 == 0) ? "_:b" + (i % 50) : "<http://example.org/s" + i + ">";
+                String obj = (i % 7 == 0) ? "_:b" + ((i + 25) % 50) : "\"value " + i + "\"@en";
+                String graph = !quads ? "" 
+                                : (i % 5 == 0) ? " _:g" + (i % 4) : " <http://example.org/g" + (i % 4) + ">";
+                w.write(subj + " <http://example.org/p" + (i % 10) + "> " + obj + graph + " .\n");
+            }
+        }
+        return p;
+    }
+    
+    /**
+     * Parse a file with a single parser
+     * 
+     * @param p file
+     * @param format format
+     * @return model
+     * @throws IOException 
+     */
+    private static Model parseSequential(Path p, RDFFormat format) throws IOException {
+        ParserConfig cfg = new ParserConfig();
+        cfg.set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+        try (InputStream in = Files.newInputStream(p)) {
+            return Rio.parse(in, Validator.BASE_URI, format, cfg, VF, null);
+        }
+    }
+    
+    /**
+     * Get the statements as strings, without the prefix the parallel loader
+     * adds to blank node labels
+     * 
+     * @param m model
+     * @return sorted statements
+     */
+    private static Set<String> labels(Model m) {
+        Set<String> s = new TreeSet<>();
+        for (Statement st: m) {
+            s.add(st.toString().replaceAll("_:genid-[0-9a-f]{32}-", "_:"));
+        }
+        return s;
+    }
+    
+    /**
+     * Parse a file with the parallel loader
+     * 
+     * @param p file
+     * @param format format
+     * @return model
+     * @throws IOException 
+     */
+    private static Model parseParallel(Path p, RDFFormat format) throws IOException {
+        Model m = new LinkedHashModel();
+        new ParallelNTriplesLoader(p, format, VF, 4).parse(new StatementCollector(m));
+        return m;
+    }
+    
+    @Test
+    public void testNTriples() throws IOException {
+        Path p = write("test.nt", false);
+        Model expected = parseSequential(p, RDFFormat.NTRIPLES);
+        Model actual = parseParallel(p, RDFFormat.NTRIPLES);
+        assertEquals(expected.size(), actual.size());
+        assertTrue(Models.isomorphic(expected, actual));
+        assertEquals(labels(expected), labels(actual));
+    }
+    
+    @Test
+    public void testNQuads() throws IOException {
+        Path p = write("test.nq", true);
+        Model expected = parseSequential(p, RDFFormat.NQUADS);
+        Model actual = parseParallel(p, RDFFormat.NQUADS);
+        assertEquals(expected.size(), actual.size());
+        // Models.isomorphic does not map blank nodes used as graph names
+        assertEquals(labels(expected), labels(actual));
+    }
+    
+    @Test
+    public void testSmallFile() throws IOException {
+        Path p = write("test.nt", false);
+        assertFalse(ParallelNTriplesLoader.canLoad(p, RDFFormat.NTRIPLES));
+    }
+    
+    @Test
+    public void testParseError() throws IOException {
+        Path p = write("test.nt", false);
+        Files.writeString(p, "<http://example.org/s> broken .\n", 
+                                StandardOpenOption.APPEND);
+        assertThrows(RDFParseException.class, () -> parseParallel(p, RDFFormat.NTRIPLES));
+    }
+}